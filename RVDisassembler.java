@@ -1,12 +1,298 @@
+import elf.BatchDisassembler;
+import elf.CrossReferences;
+import elf.DecodeCache;
+import elf.DisassemblyServer;
 import elf.ElfFile;
+import elf.ListingCache;
+import elf.OpcodeHistogram;
+import elf.RunStats;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class RVDisassembler {
-    public static void main(String[] args) {
-        if (args.length < 2) {
-            System.out.println("Enter 2 arguments: input file name (elf) and output file name");
+    private static void usage() {
+        System.out.println("Options: --mmap      map the input file instead of reading it onto the heap");
+        System.out.println("         --parallel  decode .text on all cores");
+        System.out.println("         --stream    decode and write concurrently without keeping .text in memory");
+        System.out.println("         --binary    write a binary listing (fixed-width records, see elf.BinaryListing)");
+        System.out.println("         --decode-cache  render repeated instruction words once and print hit/miss counts");
+        System.out.println("         --cache-dir d   reuse rendered functions whose bytes did not change from directory d");
+        System.out.println("         --blocks    mark basic blocks with their predecessors and successors");
+        System.out.println("         --xrefs f   print callers and callees of function f (input file only)");
+        System.out.println("         --stats     print time, allocation and throughput of every phase");
+        System.out.println("         --stats-json  the same as one line of JSON");
+        System.out.println("         --histogram count instructions by mnemonic, category and function; the only");
+        System.out.println("                     argument is a file, directory, glob or @manifest (merged, on --threads)");
+        System.out.println("         --histogram-json  the same as one line of JSON");
+        System.out.println("         --batch     first argument is a directory, glob or @manifest of inputs,");
+        System.out.println("                     second is the output directory");
+        System.out.println("         --serve port  answer /file, /function, /range, /symbolize, /xrefs and /stats on localhost,");
+        System.out.println("                     keeping parsed inputs in memory (see elf.DisassemblyServer)");
+        System.out.println("         --cache-mb n  memory for parsed inputs of --serve, 256 by default");
+        System.out.println("         --threads n worker threads for --batch and --serve");
+    }
+
+    /**
+     * Value of the option at {@code args[arg - 1]}.
+     */
+    private static String value(String[] args, int arg) {
+        if (arg >= args.length) {
+            throw new IllegalArgumentException("Option " + args[arg - 1] + " needs a value");
+        }
+        return args[arg];
+    }
+
+    private static long number(String[] args, int arg) {
+        String value = value(args, arg);
+        try {
+            long number = Long.parseLong(value);
+            if (number < 0 || number > Integer.MAX_VALUE) {
+                throw new NumberFormatException();
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + args[arg - 1] + " needs a non-negative number, not " + value);
+        }
+    }
+
+    /**
+     * The mode {@code name} if it is on, otherwise the one already chosen; two modes are an error.
+     */
+    private static String mode(String chosen, boolean on, String name) {
+        if (!on) {
+            return chosen;
+        }
+        if (chosen != null) {
+            throw new IllegalArgumentException(chosen + " cannot be combined with " + name);
+        }
+        return name;
+    }
+
+    private static void noEffect(boolean given, String option, String mode) {
+        if (given) {
+            throw new IllegalArgumentException(option + " has no effect with " + mode);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean mapped = false;
+        boolean parallel = false;
+        boolean stream = false;
+        boolean batch = false;
+        boolean decodeCache = false;
+        boolean binary = false;
+        String cacheDir = null;
+        boolean stats = false;
+        boolean statsJson = false;
+        boolean blocks = false;
+        String xrefs = null;
+        boolean histogram = false;
+        boolean histogramJson = false;
+        int port = -1;
+        long serverCacheMb = 256;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean threadsGiven = false;
+        boolean cacheMbGiven = false;
+        int arg = 0;
+        try {
+            while (arg < args.length && args[arg].startsWith("--")) {
+                switch (args[arg]) {
+                    case "--mmap":
+                        mapped = true;
+                        break;
+                    case "--parallel":
+                        parallel = true;
+                        break;
+                    case "--stream":
+                        stream = true;
+                        break;
+                    case "--binary":
+                        binary = true;
+                        break;
+                    case "--decode-cache":
+                        decodeCache = true;
+                        break;
+                    case "--cache-dir":
+                        cacheDir = value(args, ++arg);
+                        break;
+                    case "--stats":
+                        stats = true;
+                        break;
+                    case "--stats-json":
+                        statsJson = true;
+                        break;
+                    case "--blocks":
+                        blocks = true;
+                        break;
+                    case "--xrefs":
+                        xrefs = value(args, ++arg);
+                        break;
+                    case "--histogram":
+                        histogram = true;
+                        break;
+                    case "--histogram-json":
+                        histogramJson = true;
+                        break;
+                    case "--batch":
+                        batch = true;
+                        break;
+                    case "--serve":
+                        port = (int) number(args, ++arg);
+                        if (port > 0xffff) {
+                            throw new IllegalArgumentException("Option --serve needs a port up to 65535");
+                        }
+                        break;
+                    case "--cache-mb":
+                        serverCacheMb = number(args, ++arg);
+                        cacheMbGiven = true;
+                        break;
+                    case "--threads":
+                        threads = (int) number(args, ++arg);
+                        threadsGiven = true;
+                        if (threads == 0) {
+                            throw new IllegalArgumentException("Option --threads needs at least one thread");
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[arg]);
+                }
+                arg++;
+            }
+            if (stream && (parallel || cacheDir != null)) {
+                throw new IllegalArgumentException("--stream cannot be combined with --parallel or --cache-dir");
+            }
+            if (binary && (stream || cacheDir != null)) {
+                throw new IllegalArgumentException("--binary cannot be combined with --stream or --cache-dir");
+            }
+            if (blocks && (binary || cacheDir != null || stream)) {
+                throw new IllegalArgumentException("--blocks cannot be combined with --binary, --cache-dir or --stream");
+            }
+            // --serve, --histogram, --xrefs and --batch each replace the listing; none of the listing
+            // options applies to them, and each takes its own number of arguments
+            String mode = mode(null, port >= 0, "--serve");
+            mode = mode(mode, histogram || histogramJson, histogram ? "--histogram" : "--histogram-json");
+            mode = mode(mode, xrefs != null, "--xrefs");
+            mode = mode(mode, batch, "--batch");
+            if (mode != null) {
+                noEffect(parallel, "--parallel", mode);
+                noEffect(stream, "--stream", mode);
+                noEffect(binary, "--binary", mode);
+                noEffect(decodeCache, "--decode-cache", mode);
+                noEffect(cacheDir != null, "--cache-dir", mode);
+                noEffect(blocks, "--blocks", mode);
+                noEffect(stats, "--stats", mode);
+                noEffect(statsJson, "--stats-json", mode);
+            }
+            if (threadsGiven && (mode == null || xrefs != null)) {
+                throw new IllegalArgumentException("--threads only applies to --batch, --histogram and --serve");
+            }
+            if (cacheMbGiven && port < 0) {
+                throw new IllegalArgumentException("--cache-mb only applies to --serve");
+            }
+            int expected = port >= 0 ? 0 : histogram || histogramJson || xrefs != null ? 1 : 2;
+            if (args.length - arg != expected) {
+                throw new IllegalArgumentException(mode == null
+                        ? "Enter 2 arguments: input file name (elf) and output file name"
+                        : mode + " takes " + (expected == 0 ? "no arguments" : expected == 1 ? "one argument" : "two arguments"));
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+        if (port >= 0) {
+            DisassemblyServer server = new DisassemblyServer(port, threads, mapped, serverCacheMb << 20, System.out);
+            server.start();
+            System.out.println("Serving on http://localhost:" + server.getAddress().getPort() + "/");
+            Thread.currentThread().join();
+            return;
+        }
+        if (histogram || histogramJson) {
+            BatchDisassembler counter = new BatchDisassembler(threads, mapped, System.out);
+            OpcodeHistogram mix = counter.histogram(BatchDisassembler.expand(args[arg]));
+            if (counter.getSucceeded() > 0) {
+                if (histogram) {
+                    mix.print(System.out);
+                }
+                if (histogramJson) {
+                    System.out.println(mix.toJson());
+                }
+            }
+            if (counter.getFailed() > 0) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (xrefs != null) {
+            CrossReferences index = new ElfFile(args[arg], mapped).getCrossReferences();
+            int function = index.findFunction(xrefs);
+            if (function < 0) {
+                System.out.println("Function not found: " + xrefs);
+                System.exit(1);
+            }
+            System.out.print(index.describe(function));
+            return;
+        }
+        if (batch) {
+            List<Path> inputs = BatchDisassembler.expand(args[arg]);
+            int failed = new BatchDisassembler(threads, mapped, System.out).run(inputs, Paths.get(args[arg + 1]));
+            if (failed > 0) {
+                System.exit(1);
+            }
+            return;
+        }
+        ElfFile elf = new ElfFile(args[arg], mapped);
+        if (parallel) {
+            elf.setPool(ForkJoinPool.commonPool());
+        }
+        RunStats runStats = null;
+        if (stats || statsJson) {
+            runStats = new RunStats();
+            elf.setStats(runStats);
+        }
+        DecodeCache cache = null;
+        if (decodeCache) {
+            cache = new DecodeCache(4096);
+            elf.setDecodeCache(cache);
+        }
+        elf.setShowBlocks(blocks);
+        if (binary) {
+            elf.parse();
+            elf.writeBinary(args[arg + 1]);
+        } else if (cacheDir != null) {
+            ListingCache listingCache = new ListingCache(Paths.get(cacheDir));
+            elf.writeIncremental(args[arg + 1], listingCache);
+            System.out.println(listingCache);
+            if (runStats != null) {
+                runStats.count("functionsReused", listingCache.getHits());
+                runStats.count("functionsRendered", listingCache.getMisses());
+            }
+        } else if (stream) {
+            elf.parseAndWrite(args[arg + 1]);
+        } else {
+            elf.parse();
+            elf.write(args[arg + 1]);
+        }
+        if (cache != null) {
+            System.out.println(cache);
+            if (runStats != null) {
+                runStats.count("decodeCacheHits", cache.getHits());
+                runStats.count("decodeCacheMisses", cache.getMisses());
+                runStats.count("decodeCacheBypassed", cache.getBypassed());
+                runStats.count("decodeCacheDecodeHits", cache.getDecodeHits());
+                runStats.count("decodeCacheDecodeMisses", cache.getDecodeMisses());
+            }
+        }
+        if (stats) {
+            runStats.print(System.out);
+        }
+        if (statsJson) {
+            System.out.println(runStats.toJson());
         }
-        ElfFile elf = new ElfFile(args[0]);
-        elf.parse();
-        elf.write(args[1]);
     }
 }
@@ -0,0 +1,193 @@
+package elf;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Microbenchmarks for the parsing, decoding and rendering hot paths. Each benchmark runs on
+ * the bundled test_elf (or any files given on the command line) and on synthetic RV32IM images,
+ * and is reported per instruction of the image: time and bytes allocated on the benchmark thread.
+ * A quick check with no dependencies; the JMH benchmarks in {@code jmh/} measure the same phases
+ * with forks, warm-up and error bounds.
+ * <p>
+ * Usage: {@code java -cp <classes> elf.Benchmarks [--words n]... [--iterations n] [elf files]}
+ */
+public final class Benchmarks {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // results are folded in here so that the JIT cannot drop the work
+    static volatile long sink;
+
+    private interface Body {
+        long run(ByteBuffer image) throws IOException;
+    }
+
+    private static final class Benchmark {
+        final String name;
+        final Body body;
+
+        Benchmark(String name, Body body) {
+            this.name = name;
+            this.body = body;
+        }
+    }
+
+    static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * The image with its ELF header and section headers read, as every phase starts from.
+     */
+    static ElfFile headers(ByteBuffer image) {
+        ElfFile elf = new ElfFile(image);
+        elf.parseHeader();
+        elf.parseSectionHeader();
+        return elf;
+    }
+
+    /**
+     * The image with symbols, labels and code parsed, ready to be written.
+     */
+    static ElfFile parsed(ByteBuffer image) {
+        ElfFile elf = headers(image);
+        elf.parseSymtab();
+        elf.labels = elf.symtab.toLabels(elf.codeMap);
+        elf.parseText();
+        return elf;
+    }
+
+    private static final List<Benchmark> BENCHMARKS = List.of(
+            new Benchmark("headers", image -> headers(image).hashCode()),
+            new Benchmark("symtab", image -> {
+                ElfFile elf = headers(image);
+                elf.parseSymtab();
+                elf.labels = elf.symtab.toLabels(elf.codeMap);
+                return elf.labels.size();
+            }),
+            new Benchmark("decode", image -> {
+                ElfFile elf = headers(image);
+                long acc = 0;
+                for (CodeSection section : elf.code) {
+                    for (int index = 0; index < section.count; index++) {
+                        acc += Decoder.decode(elf.word(section, index), section.compressed);
+                    }
+                }
+                return acc;
+            }),
+            new Benchmark("visit", image -> {
+                long[] acc = new long[1];
+                new ElfFile(image).decode((addr, word, length, mnemonic, rd, rs1, rs2, imm, target) ->
+                        acc[0] += mnemonic + rd + imm + target);
+                return acc[0];
+            }),
+            new Benchmark("parseText", image -> parsed(image).getInstructionCount()),
+            new Benchmark("render", new Render(false)),
+            new Benchmark("render+dc", new Render(true))
+    );
+
+    private static final class Render implements Body {
+        private final boolean cached;
+        private ByteBuffer image;
+        private ElfFile elf;
+
+        Render(boolean cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public long run(ByteBuffer image) throws IOException {
+            if (this.image != image) {
+                this.image = image;
+                this.elf = parsed(image);
+            }
+            ListingWriter writer = new ListingWriter(DISCARD);
+            if (cached) {
+                writer.setCache(new DecodeCache(4096));
+            }
+            elf.writeText(writer);
+            elf.symtab.write(writer);
+            writer.flushOutput();
+            return writer.getBytesWritten();
+        }
+    }
+
+    private Benchmarks() {
+    }
+
+    private static void measure(String input, ByteBuffer image, int iterations) throws IOException {
+        int instructions = Math.max(1, headers(image).textWords());
+        for (Benchmark benchmark : BENCHMARKS) {
+            long acc = 0;
+            for (int i = 0; i < iterations; i++) {
+                acc += benchmark.body.run(image);
+            }
+            long thread = Thread.currentThread().getId();
+            long allocated = THREADS.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                acc += benchmark.body.run(image);
+            }
+            long nanos = System.nanoTime() - start;
+            allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+            sink += acc;
+            double perInstruction = (double) iterations * instructions;
+            System.out.printf(Locale.ROOT, "%-24s %-10s %10d %12.2f %12.2f%n", input, benchmark.name,
+                    instructions, nanos / perInstruction, allocated / perInstruction);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Integer> sizes = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        int iterations = 20;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--words":
+                    sizes.add(Integer.parseInt(args[++i]));
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if (files.isEmpty() && Files.exists(Paths.get("test_elf"))) {
+            files.add("test_elf");
+        }
+        if (sizes.isEmpty()) {
+            sizes.add(1 << 20);
+        }
+
+        System.out.printf("%-24s %-10s %10s %12s %12s%n", "input", "benchmark", "instrs", "ns/instr", "B/instr");
+        for (String file : files) {
+            measure(file, ByteBuffer.wrap(Files.readAllBytes(Paths.get(file))), Math.max(iterations, 1000));
+        }
+        for (int words : sizes) {
+            measure("synthetic-" + words, SyntheticElf.build(words, 32, words), iterations);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package elf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Round trip of the binary listing: writes it for each input, maps it back with
+ * {@link BinaryListing} and compares every record, label, symbol and code section with what the
+ * parsed file holds. Runs on the bundled test_elf (or any files given on the command line) and on
+ * a synthetic RV32IM image; exits with status 1 at the first difference.
+ * <p>
+ * Usage: {@code java -cp <classes> elf.BinaryListingCheck [elf files]}
+ */
+public final class BinaryListingCheck {
+    private BinaryListingCheck() {
+    }
+
+    private static void expect(String input, String what, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            System.out.println(input + ": " + what + ": expected " + expected + ", read " + actual);
+            System.exit(1);
+        }
+    }
+
+    private static String labelName(BinaryListing listing, int label) {
+        return label < 0 ? null : listing.getLabelName(label);
+    }
+
+    private static void check(String input, ElfFile elf) throws IOException {
+        elf.parse();
+        Path path = Files.createTempFile("listing", ".rvdb");
+        try {
+            elf.writeBinary(path.toString());
+            BinaryListing listing = BinaryListing.open(path);
+            InstructionStore text = elf.text;
+            expect(input, "records", text.size(), listing.size());
+            expect(input, "sections", elf.code.size(), listing.sectionCount());
+            for (int s = 0; s < elf.code.size(); s++) {
+                CodeSection section = elf.code.get(s);
+                expect(input, "section " + s, section.name + " " + section.addr + " " + section.first + " " + section.count,
+                        listing.getSectionName(s) + " " + listing.getSectionAddr(s) + " "
+                                + listing.getSectionFirst(s) + " " + listing.getSectionSize(s));
+                for (int index = section.first; index < section.first + section.count; index++) {
+                    String at = "record " + index;
+                    int addr = text.getAddr(index);
+                    long decoded = text.getDecoded(index);
+                    expect(input, at + " addr", addr, listing.getAddr(index));
+                    expect(input, at + " word", text.getWord(index), listing.getWord(index));
+                    expect(input, at + " mnemonic", Decoder.mnemonic(decoded), listing.getMnemonic(index));
+                    expect(input, at + " length", Decoder.length(decoded), listing.getLength(index));
+                    expect(input, at + " registers", Decoder.rd(decoded) + " " + Decoder.rs1(decoded) + " " + Decoder.rs2(decoded),
+                            listing.getRd(index) + " " + listing.getRs1(index) + " " + listing.getRs2(index));
+                    expect(input, at + " imm", Decoder.imm(decoded), listing.getImm(index));
+                    int label = listing.getLabel(index);
+                    expect(input, at + " label", elf.labels.getLabel(s, addr), labelName(listing, label));
+                    if (label >= 0) {
+                        expect(input, at + " label place", s + " " + addr,
+                                listing.getLabelSection(label) + " " + listing.getLabelAddr(label));
+                    }
+                    int target = Decoder.hasTarget(decoded) ? addr + Decoder.imm(decoded) : 0;
+                    label = listing.getTargetLabel(index);
+                    expect(input, at + " target label",
+                            Decoder.hasTarget(decoded) ? elf.labels.getTarget(s, target) : null, labelName(listing, label));
+                    if (label >= 0) {
+                        expect(input, at + " target label place", elf.labels.sectionAt(s, target) + " " + target,
+                                listing.getLabelSection(label) + " " + listing.getLabelAddr(label));
+                    }
+                }
+            }
+            List<SymbolTable.Symbol> symbols = elf.symtab.symbols();
+            expect(input, "symbols", symbols.size(), listing.symbolCount());
+            for (int i = 0; i < symbols.size(); i++) {
+                SymbolTable.Symbol symbol = symbols.get(i);
+                expect(input, "symbol " + i, symbol.getName() + " " + symbol.getValue() + " " + symbol.getSize()
+                                + " " + symbol.getType() + " " + symbol.getBind() + " " + symbol.getVis() + " " + symbol.getIndex(),
+                        listing.getSymbolName(i) + " " + listing.getSymbolValue(i) + " " + listing.getSymbolSize(i)
+                                + " " + listing.getSymbolType(i) + " " + listing.getSymbolBind(i) + " "
+                                + listing.getSymbolVis(i) + " " + listing.getSymbolIndex(i));
+            }
+            System.out.println(input + ": " + listing.size() + " records, " + listing.labelCount() + " labels ok");
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> files = new ArrayList<>(List.of(args));
+        if (files.isEmpty() && Files.exists(Paths.get("test_elf"))) {
+            files.add("test_elf");
+        }
+        for (String file : files) {
+            check(file, new ElfFile(file));
+        }
+        ByteBuffer image = SyntheticElf.build(1 << 16, 32, 1);
+        check("synthetic-" + (1 << 16), new ElfFile(image));
+    }
+}
@@ -0,0 +1,141 @@
+package elf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Builds RV32IM executables of any size for benchmarks: .text is a run of functions made of
+ * a realistic instruction mix (ALU, M extension, loads/stores, local branches, calls) ending in
+ * {@code ret}, with one FUNC symbol per function.
+ */
+final class SyntheticElf {
+    private static final int TEXT_ADDR = 0x10074;
+    private static final int TEXT_OFFSET = 0x74;
+
+    private SyntheticElf() {
+    }
+
+    private static int rType(int func7, int func3, int rd, int rs1, int rs2) {
+        return func7 << 25 | rs2 << 20 | rs1 << 15 | func3 << 12 | rd << 7 | Decoder.OP;
+    }
+
+    private static int iType(int opcode, int func3, int rd, int rs1, int imm) {
+        return (imm & 0xfff) << 20 | rs1 << 15 | func3 << 12 | rd << 7 | opcode;
+    }
+
+    private static int sType(int func3, int rs1, int rs2, int imm) {
+        return (imm >> 5 & 0x7f) << 25 | rs2 << 20 | rs1 << 15 | func3 << 12 | (imm & 0x1f) << 7 | Decoder.OP_STORE;
+    }
+
+    private static int bType(int func3, int rs1, int rs2, int offset) {
+        return (offset >> 12 & 1) << 31 | (offset >> 5 & 0x3f) << 25 | rs2 << 20 | rs1 << 15 | func3 << 12
+                | (offset >> 1 & 0xf) << 8 | (offset >> 11 & 1) << 7 | Decoder.OP_BRANCH;
+    }
+
+    private static int jType(int rd, int offset) {
+        return (offset >> 20 & 1) << 31 | (offset >> 1 & 0x3ff) << 21 | (offset >> 11 & 1) << 20
+                | (offset >> 12 & 0xff) << 12 | rd << 7 | Decoder.OP_JAL;
+    }
+
+    private static int instruction(Random random, int index, int functionStart, int functionEnd, int words) {
+        int rd = 1 + random.nextInt(31);
+        int rs1 = random.nextInt(32);
+        int rs2 = random.nextInt(32);
+        int kind = random.nextInt(100);
+        if (kind < 30) {
+            return iType(Decoder.OP_IMM, new int[]{0, 2, 3, 4, 6, 7}[random.nextInt(6)], rd, rs1,
+                    random.nextInt(4096) - 2048);
+        } else if (kind < 45) {
+            return rType(random.nextInt(4) == 0 ? 1 : 0, random.nextInt(8), rd, rs1, rs2);
+        } else if (kind < 60) {
+            return iType(Decoder.OP_LOAD, new int[]{0, 1, 2, 4, 5}[random.nextInt(5)], rd, 2, random.nextInt(256));
+        } else if (kind < 72) {
+            return sType(random.nextInt(3), 2, rs2, random.nextInt(256));
+        } else if (kind < 84) {
+            int target = functionStart + random.nextInt(functionEnd - functionStart);
+            return bType(new int[]{0, 1, 4, 5, 6, 7}[random.nextInt(6)], rs1, rs2, (target - index) * 4);
+        } else if (kind < 90) {
+            return (random.nextInt(1 << 20) << 12) | rd << 7 | (kind % 2 == 0 ? Decoder.OP_LUI : Decoder.OP_AUIPC);
+        } else if (kind < 96) {
+            // calls stay within the range the listing's jal offsets can express
+            int target = Math.max(0, Math.min(words - 1, index + random.nextInt(1 << 16) - (1 << 15)));
+            return jType(1, (target - index) * 4);
+        } else if (kind < 98) {
+            return iType(Decoder.OP_IMM, 1, rd, rs1, random.nextInt(32));
+        }
+        return 0x00000073;
+    }
+
+    /**
+     * An image with {@code words} instructions split into functions of about {@code functionWords} each.
+     */
+    static ByteBuffer build(int words, int functionWords, long seed) {
+        Random random = new Random(seed);
+        int functions = Math.max(1, words / functionWords);
+        int[] starts = new int[functions + 1];
+        for (int f = 0; f < functions; f++) {
+            starts[f] = (int) ((long) words * f / functions);
+        }
+        starts[functions] = words;
+
+        byte[] strtab = new byte[functions * 12 + 1];
+        int strtabSize = 1;
+        int[] nameOffsets = new int[functions];
+        for (int f = 0; f < functions; f++) {
+            byte[] name = ("func_" + f).getBytes(StandardCharsets.US_ASCII);
+            nameOffsets[f] = strtabSize;
+            System.arraycopy(name, 0, strtab, strtabSize, name.length);
+            strtabSize += name.length + 1;
+        }
+        byte[] shstrtab = "\0.text\0.symtab\0.strtab\0.shstrtab\0".getBytes(StandardCharsets.US_ASCII);
+
+        int textSize = words * 4;
+        int symtabOffset = TEXT_OFFSET + textSize;
+        int symtabSize = (functions + 2) * 16;
+        int strtabOffset = symtabOffset + symtabSize;
+        int shstrtabOffset = strtabOffset + strtabSize;
+        int shoff = (shstrtabOffset + shstrtab.length + 3) & ~3;
+        ByteBuffer image = ByteBuffer.allocate(shoff + 5 * 40).order(ByteOrder.LITTLE_ENDIAN);
+
+        image.putInt(0, ElfFile.EI_MAG_ELF);
+        image.put(4, ElfFile.EI_CLASS_32).put(5, ElfFile.EI_DATA_LE).put(6, (byte) 1);
+        image.putShort(0x10, (short) 2).putShort(0x12, ElfFile.E_MACHINE_RISCV).putInt(0x14, 1)
+                .putInt(0x18, TEXT_ADDR).putInt(0x20, shoff).putShort(0x28, (short) 52)
+                .putShort(0x2e, (short) 40).putShort(0x30, (short) 5).putShort(0x32, (short) 4);
+
+        for (int f = 0; f < functions; f++) {
+            for (int index = starts[f]; index < starts[f + 1]; index++) {
+                int word = index == starts[f + 1] - 1
+                        ? 0x00008067
+                        : instruction(random, index, starts[f], starts[f + 1], words);
+                image.putInt(TEXT_OFFSET + index * 4, word);
+            }
+        }
+
+        int symbol = symtabOffset + 16;
+        image.putInt(symbol + 4, TEXT_ADDR).put(symbol + 12, (byte) SymbolTable.STT_SECTION).putShort(symbol + 14, (short) 1);
+        for (int f = 0; f < functions; f++) {
+            symbol += 16;
+            image.putInt(symbol, nameOffsets[f]).putInt(symbol + 4, TEXT_ADDR + starts[f] * 4)
+                    .putInt(symbol + 8, (starts[f + 1] - starts[f]) * 4)
+                    .put(symbol + 12, (byte) (SymbolTable.STB_GLOBAL << 4 | SymbolTable.STT_FUNC))
+                    .putShort(symbol + 14, (short) 1);
+        }
+        image.put(strtabOffset, strtab, 0, strtabSize);
+        image.put(shstrtabOffset, shstrtab);
+
+        sectionHeader(image, shoff + 40, 1, 1, 6, TEXT_ADDR, TEXT_OFFSET, textSize, 0);
+        sectionHeader(image, shoff + 80, 7, ElfFile.SHT_SYMTAB, 0, 0, symtabOffset, symtabSize, 16);
+        sectionHeader(image, shoff + 120, 15, ElfFile.SHT_STRTAB, 0, 0, strtabOffset, strtabSize, 0);
+        sectionHeader(image, shoff + 160, 23, ElfFile.SHT_STRTAB, 0, 0, shstrtabOffset, shstrtab.length, 0);
+        return image;
+    }
+
+    private static void sectionHeader(ByteBuffer image, int at, int name, int type, int flags,
+                                      int addr, int offset, int size, int entsize) {
+        image.putInt(at, name).putInt(at + 4, type).putInt(at + 8, flags).putInt(at + 0x0c, addr)
+                .putInt(at + 0x10, offset).putInt(at + 0x14, size).putInt(at + 0x24, entsize);
+    }
+}
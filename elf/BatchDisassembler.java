@@ -0,0 +1,231 @@
+package elf;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Disassembles many ELF files in one JVM on a fixed pool of workers. A file that fails is
+ * reported and skipped; the rest of the batch still runs.
+ */
+public class BatchDisassembler {
+    private final int threads;
+    private final boolean mapped;
+    private final PrintStream log;
+
+    private int succeeded;
+    private int failed;
+    private long inputBytes;
+    private long instructions;
+    private long elapsedNanos;
+
+    public BatchDisassembler(int threads, boolean mapped, PrintStream log) {
+        this.threads = threads;
+        this.mapped = mapped;
+        this.log = log;
+    }
+
+    /**
+     * Expands an input specification: {@code @file} reads one path per line from a manifest,
+     * a pattern with glob characters matches files below the pattern's fixed leading directory,
+     * a directory stands for every regular file in it (recursively), anything else is a single file.
+     */
+    public static List<Path> expand(String spec) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        if (spec.startsWith("@")) {
+            for (String line : Files.readAllLines(Paths.get(spec.substring(1)))) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    inputs.add(Paths.get(line));
+                }
+            }
+            return inputs;
+        }
+        int glob = indexOfGlob(spec);
+        Path base;
+        PathMatcher matcher;
+        boolean relative = false;
+        if (glob >= 0) {
+            int slash = spec.lastIndexOf('/', glob);
+            relative = slash < 0;
+            base = Paths.get(relative ? "." : spec.substring(0, slash + 1));
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + spec);
+        } else if (Files.isDirectory(Paths.get(spec))) {
+            base = Paths.get(spec);
+            matcher = null;
+        } else {
+            inputs.add(Paths.get(spec));
+            return inputs;
+        }
+        boolean matchRelative = relative;
+        try (Stream<Path> files = Files.walk(base)) {
+            files.filter(Files::isRegularFile)
+                    .filter(p -> matcher == null || matcher.matches(matchRelative ? base.relativize(p) : p))
+                    .sorted()
+                    .forEach(inputs::add);
+        }
+        return inputs;
+    }
+
+    private static int indexOfGlob(String spec) {
+        for (int i = 0; i < spec.length(); i++) {
+            if ("*?[{".indexOf(spec.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Result {
+        private final long bytes;
+        private final int instructions;
+
+        Result(long bytes, int instructions) {
+            this.bytes = bytes;
+            this.instructions = instructions;
+        }
+    }
+
+    private Result disassemble(Path input, Path output) throws IOException {
+        ElfFile elf = new ElfFile(input.toString(), mapped);
+        elf.parse();
+        Files.createDirectories(output.getParent());
+        elf.write(output.toString());
+        return new Result(Files.size(input), elf.getInstructionCount());
+    }
+
+    /**
+     * Output of every input: its path relative to the directory that holds all inputs, under
+     * {@code outputDir}, with {@code .txt} appended. Inputs with the same file name in different
+     * directories so get different outputs; an input that names the same file as an earlier one
+     * gets null.
+     */
+    static List<Path> outputs(List<Path> inputs, Path outputDir) {
+        Path common = null;
+        for (Path input : inputs) {
+            Path dir = input.toAbsolutePath().normalize().getParent();
+            if (common == null) {
+                common = dir;
+            }
+            while (!dir.startsWith(common)) {
+                common = common.getParent();
+            }
+        }
+        Set<Path> seen = new HashSet<>();
+        List<Path> outputs = new ArrayList<>();
+        for (Path input : inputs) {
+            Path output = outputDir.resolve(common.relativize(input.toAbsolutePath().normalize()) + ".txt");
+            outputs.add(seen.add(output) ? output : null);
+        }
+        return outputs;
+    }
+
+    /**
+     * Writes {@code <outputDir>/<input path>.txt} for every input, the path taken relative to the
+     * directory that holds all inputs (see {@link #outputs}), and prints a summary. An input listed
+     * twice is reported as failed. Returns the number of files that failed.
+     */
+    public int run(List<Path> inputs, Path outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        List<Path> outputs = outputs(inputs, outputDir);
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "elf-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Result>> results = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                Path output = outputs.get(i);
+                results.add(output == null ? null : workers.submit(() -> disassemble(input, output)));
+            }
+            for (int i = 0; i < inputs.size(); i++) {
+                if (results.get(i) == null) {
+                    failed++;
+                    log.println(inputs.get(i) + ": listed more than once");
+                    continue;
+                }
+                try {
+                    Result result = results.get(i).get();
+                    succeeded++;
+                    inputBytes += result.bytes;
+                    instructions += result.instructions;
+                } catch (ExecutionException e) {
+                    failed++;
+                    log.println(inputs.get(i) + ": " + e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        printSummary();
+        return failed;
+    }
+
+    /**
+     * Counts the instruction mix of every input on the worker pool and merges the counts; a file
+     * that fails is reported and left out, see {@link #getFailed()}. With a single input its
+     * per-function counts are kept.
+     */
+    public OpcodeHistogram histogram(List<Path> inputs) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "elf-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<OpcodeHistogram>> results = new ArrayList<>();
+            for (Path input : inputs) {
+                results.add(workers.submit(() -> OpcodeHistogram.of(new ElfFile(input.toString(), mapped))));
+            }
+            OpcodeHistogram total = new OpcodeHistogram();
+            for (int i = 0; i < inputs.size(); i++) {
+                try {
+                    OpcodeHistogram histogram = results.get(i).get();
+                    succeeded++;
+                    if (inputs.size() == 1) {
+                        return histogram;
+                    }
+                    total.merge(histogram);
+                } catch (ExecutionException e) {
+                    failed++;
+                    log.println(inputs.get(i) + ": " + e.getCause());
+                }
+            }
+            return total;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Number of inputs that failed so far, for {@link #histogram} as for {@link #run}.
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Number of inputs processed without error so far.
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    private void printSummary() {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        log.printf(Locale.ROOT, "%d files disassembled, %d failed, %d threads, %.3f s%n",
+                succeeded, failed, threads, seconds);
+        log.printf(Locale.ROOT, "%.1f files/s, %.1f MB/s, %.0f instructions/s%n",
+                succeeded / seconds, inputBytes / seconds / 1e6, instructions / seconds);
+    }
+}
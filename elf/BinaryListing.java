@@ -0,0 +1,239 @@
+package elf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader of the binary listing written by {@link ElfFile#writeBinary(String)}: the same content as
+ * the text listing, as fixed-width records that are read in place from a mapped file.
+ * <p>
+ * Layout, all little-endian, offsets from the start of the file:
+ * <pre>
+ * header      magic "RVDB", version, record size, instruction count, then the offsets of
+ *             records, mnemonics, labels, symbols, sections and strings (ints)
+ * records     per instruction: addr, raw word (halfword for a 16-bit one), imm,
+ *             label id or -1, target label id or -1 (ints), mnemonic id (byte), flags (byte,
+ *             bit 0 = 16-bit), rd | rs1 &lt;&lt; 5 | rs2 &lt;&lt; 10 (short) -- {@value #RECORD_SIZE} bytes
+ * mnemonics   count, then per mnemonic id: name string, format (ints)
+ * labels      count, then per label: code section (-1 outside code), addr, name string (ints)
+ * symbols     count, then per symbol: value, size, name string, type | bind &lt;&lt; 8 | vis &lt;&lt; 16,
+ *             section index (ints)
+ * sections    count, then per code section: name string, addr, first record, record count (ints)
+ * strings     count, count + 1 offsets into the bytes that follow, UTF-8 bytes
+ * </pre>
+ * Operand fields are the raw ones of {@link Decoder}; {@link Mnemonic#format(int)} (also stored
+ * in the file) tells which of them are operands.
+ */
+public final class BinaryListing {
+    public static final int MAGIC = 0x42445652;
+    public static final int VERSION = 2;
+    public static final int RECORD_SIZE = 24;
+    static final int HEADER_SIZE = 40;
+
+    static final int FLAG_COMPRESSED = 1;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int records;
+    private final int mnemonics;
+    private final int labels;
+    private final int symbols;
+    private final int sections;
+    private final int strings;
+    private final int stringCount;
+    private final int stringBytes;
+
+    public BinaryListing(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a binary listing");
+        }
+        if (this.buffer.getInt(4) != VERSION || this.buffer.getInt(8) != RECORD_SIZE) {
+            throw new IllegalArgumentException("Unsupported binary listing version " + this.buffer.getInt(4));
+        }
+        count = this.buffer.getInt(12);
+        records = this.buffer.getInt(16);
+        mnemonics = this.buffer.getInt(20);
+        labels = this.buffer.getInt(24);
+        symbols = this.buffer.getInt(28);
+        sections = this.buffer.getInt(32);
+        strings = this.buffer.getInt(36);
+        stringCount = this.buffer.getInt(strings);
+        stringBytes = strings + 4 + (stringCount + 1) * 4;
+    }
+
+    /**
+     * Maps the file read-only; nothing is read until it is asked for.
+     */
+    public static BinaryListing open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("File is too large to map: " + channel.size() + " bytes");
+            }
+            return new BinaryListing(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read from input file: " + e.getMessage());
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private int record(int index) {
+        return records + index * RECORD_SIZE;
+    }
+
+    public int getAddr(int index) {
+        return buffer.getInt(record(index));
+    }
+
+    public int getWord(int index) {
+        return buffer.getInt(record(index) + 4);
+    }
+
+    public int getImm(int index) {
+        return buffer.getInt(record(index) + 8);
+    }
+
+    /**
+     * Label id of the instruction's address, or -1; see {@link #getLabelName(int)}.
+     */
+    public int getLabel(int index) {
+        return buffer.getInt(record(index) + 12);
+    }
+
+    /**
+     * Label id of the jump or branch target, or -1.
+     */
+    public int getTargetLabel(int index) {
+        return buffer.getInt(record(index) + 16);
+    }
+
+    public int getMnemonic(int index) {
+        return buffer.get(record(index) + 20) & 0xff;
+    }
+
+    public int getLength(int index) {
+        return (buffer.get(record(index) + 21) & FLAG_COMPRESSED) != 0 ? 2 : 4;
+    }
+
+    private int registers(int index) {
+        return buffer.getShort(record(index) + 22);
+    }
+
+    public int getRd(int index) {
+        return registers(index) & 0x1f;
+    }
+
+    public int getRs1(int index) {
+        return registers(index) >>> 5 & 0x1f;
+    }
+
+    public int getRs2(int index) {
+        return registers(index) >>> 10 & 0x1f;
+    }
+
+    public int mnemonicCount() {
+        return buffer.getInt(mnemonics);
+    }
+
+    public String getMnemonicName(int id) {
+        return getString(buffer.getInt(mnemonics + 4 + id * 8));
+    }
+
+    public int getMnemonicFormat(int id) {
+        return buffer.getInt(mnemonics + 4 + id * 8 + 4);
+    }
+
+    public int labelCount() {
+        return buffer.getInt(labels);
+    }
+
+    /**
+     * Code section of the label, see {@link #getSectionName(int)}; -1 for an address outside code.
+     */
+    public int getLabelSection(int label) {
+        return buffer.getInt(labels + 4 + label * 12);
+    }
+
+    public int getLabelAddr(int label) {
+        return buffer.getInt(labels + 4 + label * 12 + 4);
+    }
+
+    public String getLabelName(int label) {
+        return getString(buffer.getInt(labels + 4 + label * 12 + 8));
+    }
+
+    public int symbolCount() {
+        return buffer.getInt(symbols);
+    }
+
+    private int symbol(int symbol) {
+        return symbols + 4 + symbol * 20;
+    }
+
+    public int getSymbolValue(int symbol) {
+        return buffer.getInt(symbol(symbol));
+    }
+
+    public int getSymbolSize(int symbol) {
+        return buffer.getInt(symbol(symbol) + 4);
+    }
+
+    public String getSymbolName(int symbol) {
+        return getString(buffer.getInt(symbol(symbol) + 8));
+    }
+
+    public int getSymbolType(int symbol) {
+        return buffer.get(symbol(symbol) + 12);
+    }
+
+    public int getSymbolBind(int symbol) {
+        return buffer.get(symbol(symbol) + 13);
+    }
+
+    public int getSymbolVis(int symbol) {
+        return buffer.get(symbol(symbol) + 14);
+    }
+
+    public short getSymbolIndex(int symbol) {
+        return (short) buffer.getInt(symbol(symbol) + 16);
+    }
+
+    public int sectionCount() {
+        return buffer.getInt(sections);
+    }
+
+    public String getSectionName(int section) {
+        return getString(buffer.getInt(sections + 4 + section * 16));
+    }
+
+    public int getSectionAddr(int section) {
+        return buffer.getInt(sections + 4 + section * 16 + 4);
+    }
+
+    /**
+     * Index of the section's first record.
+     */
+    public int getSectionFirst(int section) {
+        return buffer.getInt(sections + 4 + section * 16 + 8);
+    }
+
+    public int getSectionSize(int section) {
+        return buffer.getInt(sections + 4 + section * 16 + 12);
+    }
+
+    public String getString(int id) {
+        int start = buffer.getInt(strings + 4 + id * 4);
+        int end = buffer.getInt(strings + 4 + (id + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        buffer.get(stringBytes + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,221 @@
+package elf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the binary listing described in {@link BinaryListing}. Records go out through a direct
+ * buffer as they are produced; labels and strings are collected on the way and written after them,
+ * and the header, which points at every table, last.
+ */
+final class BinaryListingWriter {
+    private final FileChannel out;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private byte[] stringBytes = new byte[1 << 12];
+    private int stringSize;
+    private int[] stringOffsets = new int[64];
+    private int stringCount;
+
+    // label id of every slot of Labels, -1 until the label is first used
+    private int[] labelIds;
+    private int[] labelSections = new int[64];
+    private int[] labelAddrs = new int[64];
+    private int[] labelNames = new int[64];
+    private int labelCount;
+
+    BinaryListingWriter(FileChannel out) {
+        this.out = out;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (buf.remaining() < n) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            position += out.write(buf);
+        }
+        buf.clear();
+    }
+
+    private void putInt(int v) throws IOException {
+        ensure(4);
+        buf.putInt(v);
+    }
+
+    private int offset() {
+        long offset = position + buf.position();
+        if (offset > Integer.MAX_VALUE) {
+            ElfFile.ElfError("Binary listing is larger than 2 GiB");
+        }
+        return (int) offset;
+    }
+
+    private void reserve(int length) {
+        if (stringSize + length > stringBytes.length) {
+            stringBytes = Arrays.copyOf(stringBytes, Math.max(stringBytes.length * 2, stringSize + length));
+        }
+    }
+
+    private int addString(int length) {
+        if (stringCount == stringOffsets.length) {
+            stringOffsets = Arrays.copyOf(stringOffsets, stringCount * 2);
+        }
+        stringOffsets[stringCount] = stringSize;
+        stringSize += length;
+        return stringCount++;
+    }
+
+    private int string(String s) {
+        Integer id = stringIds.get(s);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, stringBytes, stringSize, bytes.length);
+        id = addString(bytes.length);
+        stringIds.put(s, id);
+        return id;
+    }
+
+    /**
+     * New string copied from the NUL-terminated bytes at the offset, without decoding them.
+     */
+    private int string(ByteBuffer strings, int offset) {
+        int end = offset;
+        while (end < strings.limit() && strings.get(end) != 0) {
+            end++;
+        }
+        reserve(end - offset);
+        strings.get(offset, stringBytes, stringSize, end - offset);
+        return addString(end - offset);
+    }
+
+    /**
+     * Id of the label at the address of the section, or -1; a label's name goes into the strings the
+     * first time it is used, straight from .strtab for a symbol.
+     */
+    private int label(int section, int addr, Labels labels) {
+        int slot = labels.find(section, addr);
+        if (slot < 0) {
+            return -1;
+        }
+        if (labelIds[slot] >= 0) {
+            return labelIds[slot];
+        }
+        if (labelCount == labelAddrs.length) {
+            labelSections = Arrays.copyOf(labelSections, labelCount * 2);
+            labelAddrs = Arrays.copyOf(labelAddrs, labelCount * 2);
+            labelNames = Arrays.copyOf(labelNames, labelCount * 2);
+        }
+        int offset = labels.nameOffset(slot);
+        labelSections[labelCount] = section;
+        labelAddrs[labelCount] = addr;
+        labelNames[labelCount] = offset < 0 ? string(labels.stringName(slot)) : string(labels.strings(), offset);
+        labelIds[slot] = labelCount;
+        return labelCount++;
+    }
+
+    /**
+     * Writes every instruction of {@code text}, the labels they use, the symbols and the code sections.
+     */
+    void write(InstructionStore text, List<CodeSection> code, Labels labels, SymbolTable symtab) throws IOException {
+        labelIds = new int[labels.capacity()];
+        Arrays.fill(labelIds, -1);
+        int[] header = new int[BinaryListing.HEADER_SIZE / 4];
+        header[0] = BinaryListing.MAGIC;
+        header[1] = BinaryListing.VERSION;
+        header[2] = BinaryListing.RECORD_SIZE;
+        header[3] = text.size();
+        for (int v : header) {
+            putInt(v);
+        }
+
+        header[4] = offset();
+        for (int section = 0; section < code.size(); section++) {
+            int first = code.get(section).first;
+            for (int index = first; index < first + code.get(section).count; index++) {
+                int addr = text.getAddr(index);
+                long decoded = text.getDecoded(index);
+                int imm = Decoder.imm(decoded);
+                ensure(BinaryListing.RECORD_SIZE);
+                buf.putInt(addr).putInt(text.getWord(index)).putInt(imm)
+                        .putInt(label(section, addr, labels))
+                        .putInt(Decoder.hasTarget(decoded)
+                                ? label(labels.sectionAt(section, addr + imm), addr + imm, labels) : -1)
+                        .put((byte) Decoder.mnemonic(decoded))
+                        .put((byte) (Decoder.length(decoded) == 2 ? BinaryListing.FLAG_COMPRESSED : 0))
+                        .putShort((short) (Decoder.rd(decoded) | Decoder.rs1(decoded) << 5 | Decoder.rs2(decoded) << 10));
+            }
+        }
+
+        header[5] = offset();
+        putInt(Mnemonic.COUNT);
+        for (int id = 0; id < Mnemonic.COUNT; id++) {
+            putInt(string(Mnemonic.name(id)));
+            putInt(Mnemonic.format(id));
+        }
+
+        header[6] = offset();
+        putInt(labelCount);
+        for (int i = 0; i < labelCount; i++) {
+            putInt(labelSections[i]);
+            putInt(labelAddrs[i]);
+            putInt(labelNames[i]);
+        }
+
+        header[7] = offset();
+        putInt(symtab.size());
+        for (SymbolTable.Symbol symbol : symtab.symbols()) {
+            putInt(symbol.getValue());
+            putInt(symbol.getSize());
+            putInt(string(symbol.getName()));
+            putInt((symbol.getType() & 0xff) | (symbol.getBind() & 0xff) << 8 | (symbol.getVis() & 0xff) << 16);
+            putInt(symbol.getIndex());
+        }
+
+        header[8] = offset();
+        putInt(code.size());
+        for (CodeSection section : code) {
+            putInt(string(section.name));
+            putInt(section.addr);
+            putInt(section.first);
+            putInt(section.count);
+        }
+
+        header[9] = offset();
+        putInt(stringCount);
+        for (int i = 0; i < stringCount; i++) {
+            putInt(stringOffsets[i]);
+        }
+        putInt(stringSize);
+        flush();
+        for (int at = 0; at < stringSize; at += buf.capacity()) {
+            buf.put(stringBytes, at, Math.min(buf.capacity(), stringSize - at));
+            flush();
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(BinaryListing.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int v : header) {
+            head.putInt(v);
+        }
+        head.flip();
+        for (long at = 0; head.hasRemaining(); ) {
+            at += out.write(head, at);
+        }
+    }
+}
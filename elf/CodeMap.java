@@ -0,0 +1,114 @@
+package elf;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The executable sections by address, by section header index and by instruction index. In a
+ * relocatable object every section starts at address 0, so an address alone does not say which
+ * instruction it is: lookups take the section the address comes from and look there first.
+ */
+final class CodeMap {
+    private final List<CodeSection> code;
+    // positions in code sorted by start address, then by end, with the start addresses
+    private final int[] byAddr;
+    private final long[] starts;
+    // position in code of every section header index, -1 for sections that are not code
+    private final int[] byHeader;
+
+    CodeMap(List<CodeSection> code, int headers) {
+        this.code = code;
+        int n = code.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            long startA = code.get(a).addr & 0xffffffffL;
+            long startB = code.get(b).addr & 0xffffffffL;
+            return startA != startB ? Long.compare(startA, startB) : Long.compare(code.get(a).end(), code.get(b).end());
+        });
+        byAddr = new int[n];
+        starts = new long[n];
+        for (int i = 0; i < n; i++) {
+            byAddr[i] = order[i];
+            starts[i] = code.get(order[i]).addr & 0xffffffffL;
+        }
+        byHeader = new int[Math.max(headers, 0)];
+        Arrays.fill(byHeader, -1);
+        for (int i = 0; i < n; i++) {
+            int header = code.get(i).header;
+            if (header >= 0 && header < byHeader.length) {
+                byHeader[header] = i;
+            }
+        }
+    }
+
+    int size() {
+        return code.size();
+    }
+
+    CodeSection get(int section) {
+        return code.get(section);
+    }
+
+    /**
+     * Whether the address falls inside the section's bytes.
+     */
+    boolean contains(int section, int addr) {
+        CodeSection s = code.get(section);
+        long offset = (addr & 0xffffffffL) - (s.addr & 0xffffffffL);
+        return offset >= 0 && offset < s.end();
+    }
+
+    /**
+     * Section holding the address: {@code near} if it does, otherwise the one with the greatest start at
+     * or below the address, or -1 if no section holds it. {@code near} may be -1.
+     */
+    int sectionAt(int near, int addr) {
+        if (near >= 0 && contains(near, addr)) {
+            return near;
+        }
+        long at = addr & 0xffffffffL;
+        int lo = 0;
+        int hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= at) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo > 0 && contains(byAddr[lo - 1], addr) ? byAddr[lo - 1] : -1;
+    }
+
+    /**
+     * Section a symbol belongs to: the code section its {@code st_shndx} names if that holds its value,
+     * otherwise the one found by address.
+     */
+    int sectionOf(short shndx, int value) {
+        int header = shndx & 0xffff;
+        if (header < byHeader.length && byHeader[header] >= 0 && contains(byHeader[header], value)) {
+            return byHeader[header];
+        }
+        return sectionAt(-1, value);
+    }
+
+    /**
+     * Section whose instructions take the index of {@link ElfFile#text}.
+     */
+    int sectionOfIndex(int index) {
+        int lo = 0;
+        int hi = code.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (code.get(mid).first <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,93 @@
+package elf;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An executable section to disassemble: where its bytes are in the file, where they are loaded,
+ * and which slots of {@link ElfFile#text} its instructions take.
+ * <p>
+ * Without the C extension every instruction is 4 bytes long and is found by its index alone.
+ * With it, a pre-scan that looks only at the low two bits of each instruction records where
+ * every instruction starts, so that any index range can be decoded on its own, e.g. by parallel workers.
+ */
+final class CodeSection {
+    final String name;
+    // index in the section header table, -1 if the section was made up
+    final int header;
+    final int addr;
+    final int offset;
+    // number of instructions
+    final int count;
+    // index of the section's first instruction in ElfFile.text
+    final int first;
+    // whether 16-bit instructions may appear
+    final boolean compressed;
+    // byte offset of every instruction from the section start, followed by the end; null if all are 4 bytes
+    private final int[] starts;
+
+    /**
+     * Section of {@code size} bytes at {@code offset} in the image; with {@code compressed} the
+     * bytes are pre-scanned for instruction boundaries.
+     */
+    CodeSection(String name, int header, int addr, ByteBuffer bytes, int offset, int size, boolean compressed, int first) {
+        this.name = name;
+        this.header = header;
+        this.addr = addr;
+        this.offset = offset;
+        this.first = first;
+        this.compressed = compressed;
+        if (compressed) {
+            starts = scan(bytes, offset, size);
+            count = starts.length - 1;
+        } else {
+            starts = null;
+            count = (int) ((Math.max(size, 0) + 3L) / 4);
+        }
+    }
+
+    private static int[] scan(ByteBuffer bytes, int offset, int size) {
+        int[] starts = new int[Math.max(size, 0) / 2 + 2];
+        int n = 0;
+        int at = 0;
+        while (at < size) {
+            starts[n++] = at;
+            at += Decoder.isCompressed(bytes.get(offset + at)) ? 2 : 4;
+        }
+        starts[n] = at;
+        return Arrays.copyOf(starts, n + 1);
+    }
+
+    /**
+     * Byte offset of the instruction from the section start; {@code startOf(count)} is the end.
+     */
+    int startOf(int index) {
+        return starts == null ? index * 4 : starts[index];
+    }
+
+    int end() {
+        return startOf(count);
+    }
+
+    int addrOf(int index) {
+        return addr + startOf(index);
+    }
+
+    int offsetOf(int index) {
+        return offset + startOf(index);
+    }
+
+    /**
+     * Index of the first instruction that starts at or after the byte offset, or {@link #count}.
+     */
+    int indexAt(long at) {
+        if (at <= 0) {
+            return 0;
+        }
+        if (starts == null) {
+            return (int) Math.min(count, (at + 3) / 4);
+        }
+        int index = Arrays.binarySearch(starts, 0, count + 1, (int) Math.min(at, Integer.MAX_VALUE));
+        return Math.min(count, index >= 0 ? index : -index - 1);
+    }
+}
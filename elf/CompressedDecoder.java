@@ -0,0 +1,175 @@
+package elf;
+
+import static elf.Mnemonic.*;
+
+/**
+ * RV32C decoder. Every 16-bit instruction is expanded to the RV32I instruction it stands for,
+ * in the packed form of {@link Decoder#decode(int)} with {@link Decoder#COMPRESSED} set, so it
+ * is listed like its expansion. The whole 16-bit space is decoded once into a table on first use.
+ * Floating-point loads and stores, RV64/RV128-only encodings and reserved ones decode as UNKNOWN.
+ */
+final class CompressedDecoder {
+    private static final long[] TABLE = new long[1 << 16];
+
+    static {
+        for (int half = 0; half < TABLE.length; half++) {
+            TABLE[half] = (half & 0b11) == 0b11 ? 0 : expand(half) | Decoder.COMPRESSED;
+        }
+    }
+
+    private CompressedDecoder() {
+    }
+
+    /**
+     * Decoded form of a 16-bit instruction; the low two bits must not be 11.
+     */
+    static long decode(int half) {
+        return TABLE[half & 0xffff];
+    }
+
+    /**
+     * Whether the instruction is c.j, c.jal, c.beqz or c.bnez.
+     */
+    static boolean isPcRelative(int half) {
+        int func3 = half >>> 13 & 0b111;
+        return (half & 0b11) == 0b01 && (func3 == 0b001 || func3 >= 0b101);
+    }
+
+    static int targetOffset(int half) {
+        return Decoder.imm(decode(half));
+    }
+
+    private static int bit(int half, int from, int to) {
+        return (half >>> from & 1) << to;
+    }
+
+    private static int signExtend(int value, int bits) {
+        return value << (32 - bits) >> (32 - bits);
+    }
+
+    // rd' / rs1' / rs2' name x8..x15
+    private static int low(int half, int at) {
+        return 8 + (half >>> at & 0b111);
+    }
+
+    private static int imm6(int half) {
+        return signExtend(bit(half, 12, 5) | (half >>> 2 & 0x1f), 6);
+    }
+
+    private static int jumpOffset(int half) {
+        int offset = bit(half, 12, 11) | bit(half, 11, 4) | (half >>> 9 & 0b11) << 8 | bit(half, 8, 10)
+                | bit(half, 7, 6) | bit(half, 6, 7) | (half >>> 3 & 0b111) << 1 | bit(half, 2, 5);
+        return signExtend(offset, 12);
+    }
+
+    private static int branchOffset(int half) {
+        int offset = bit(half, 12, 8) | (half >>> 10 & 0b11) << 3 | (half >>> 5 & 0b11) << 6
+                | (half >>> 3 & 0b11) << 1 | bit(half, 2, 5);
+        return signExtend(offset, 9);
+    }
+
+    private static long expand(int half) {
+        int func3 = half >>> 13 & 0b111;
+        int rd = half >>> 7 & 0x1f;
+        int rs2 = half >>> 2 & 0x1f;
+        switch ((half & 0b11) << 3 | func3) {
+            case 0b00_000: {
+                // c.addi4spn
+                int imm = (half >>> 7 & 0b110000) | (half >>> 1 & 0b1111000000) | bit(half, 6, 2) | bit(half, 5, 3);
+                return imm == 0 ? unknown() : Decoder.pack(ADDI, low(half, 2), 2, 0, imm);
+            }
+            case 0b00_010:
+            case 0b00_110: {
+                // c.lw, c.sw
+                int imm = (half >>> 10 & 0b111) << 3 | bit(half, 6, 2) | bit(half, 5, 6);
+                return func3 == 0b010
+                        ? Decoder.pack(LW, low(half, 2), low(half, 7), 0, imm)
+                        : Decoder.pack(SW, 0, low(half, 7), low(half, 2), imm);
+            }
+            case 0b01_000:
+                // c.addi, c.nop
+                return Decoder.pack(ADDI, rd, rd, 0, imm6(half));
+            case 0b01_001:
+                // c.jal
+                return Decoder.pack(JAL, 1, 0, 0, jumpOffset(half));
+            case 0b01_010:
+                // c.li
+                return Decoder.pack(ADDI, rd, 0, 0, imm6(half));
+            case 0b01_011: {
+                if (rd == 2) {
+                    // c.addi16sp
+                    int imm = signExtend(bit(half, 12, 9) | bit(half, 6, 4) | bit(half, 5, 6)
+                            | (half >>> 3 & 0b11) << 7 | bit(half, 2, 5), 10);
+                    return imm == 0 ? unknown() : Decoder.pack(ADDI, 2, 2, 0, imm);
+                }
+                // c.lui, printed like lui with its 20-bit field
+                int imm = imm6(half);
+                return imm == 0 ? unknown() : Decoder.pack(LUI, rd, 0, 0, imm & 0xfffff);
+            }
+            case 0b01_100:
+                return arithmetic(half);
+            case 0b01_101:
+                // c.j
+                return Decoder.pack(JAL, 0, 0, 0, jumpOffset(half));
+            case 0b01_110:
+            case 0b01_111:
+                // c.beqz, c.bnez
+                return Decoder.pack(func3 == 0b110 ? BEQ : BNE, 0, low(half, 7), 0, branchOffset(half));
+            case 0b10_000:
+                // c.slli; shamt[5] must be zero on RV32
+                return (half & 1 << 12) != 0 ? unknown() : Decoder.pack(SLLI, rd, rd, 0, rs2);
+            case 0b10_010: {
+                // c.lwsp
+                int imm = bit(half, 12, 5) | (half >>> 4 & 0b111) << 2 | (half >>> 2 & 0b11) << 6;
+                return rd == 0 ? unknown() : Decoder.pack(LW, rd, 2, 0, imm);
+            }
+            case 0b10_100:
+                if ((half & 1 << 12) == 0) {
+                    if (rs2 == 0) {
+                        // c.jr
+                        return rd == 0 ? unknown() : Decoder.pack(JALR, 0, rd, 0, 0);
+                    }
+                    // c.mv
+                    return Decoder.pack(ADD, rd, 0, rs2, 0);
+                }
+                if (rs2 == 0) {
+                    // c.ebreak, c.jalr
+                    return rd == 0 ? Decoder.pack(EBREAK, 0, 0, 0, 0) : Decoder.pack(JALR, 1, rd, 0, 0);
+                }
+                // c.add
+                return Decoder.pack(ADD, rd, rd, rs2, 0);
+            case 0b10_110: {
+                // c.swsp
+                int imm = (half >>> 9 & 0b1111) << 2 | (half >>> 7 & 0b11) << 6;
+                return Decoder.pack(SW, 0, 2, rs2, imm);
+            }
+            default:
+                return unknown();
+        }
+    }
+
+    // c.srli, c.srai, c.andi, c.sub, c.xor, c.or, c.and
+    private static long arithmetic(int half) {
+        int rd = low(half, 7);
+        switch (half >>> 10 & 0b11) {
+            case 0b00:
+            case 0b01:
+                if ((half & 1 << 12) != 0) {
+                    return unknown();
+                }
+                return Decoder.pack((half >>> 10 & 1) == 0 ? SRLI : SRAI, rd, rd, 0, half >>> 2 & 0x1f);
+            case 0b10:
+                return Decoder.pack(ANDI, rd, rd, 0, imm6(half));
+            default:
+                if ((half & 1 << 12) != 0) {
+                    return unknown();
+                }
+                int[] ops = {SUB, XOR, OR, AND};
+                return Decoder.pack(ops[half >>> 5 & 0b11], rd, rd, low(half, 2), 0);
+        }
+    }
+
+    private static long unknown() {
+        return Decoder.pack(UNKNOWN, 0, 0, 0, 0);
+    }
+}
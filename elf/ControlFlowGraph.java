@@ -0,0 +1,327 @@
+package elf;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Basic blocks and control-flow edges of every executable section, in the instruction index of
+ * {@link ElfFile#text} (sections one after another). Built in one decoding pass that marks block
+ * leaders in a bit set: section starts, function entries and ends, jump, call and branch targets,
+ * and the instruction after each branch, {@code jal zero} and {@code jalr zero}. Calls do not end a
+ * block, since control comes back after them. Blocks and edges are then kept in flat int arrays
+ * (successors and predecessors in compressed-row form), so memory is a few words per block.
+ * <p>
+ * Edges go to the other block of a conditional branch ({@link #EDGE_TAKEN}), to the target of an
+ * unconditional jump ({@link #EDGE_JUMP}) and to the next block when control falls through
+ * ({@link #EDGE_FALLTHROUGH}), never across a section end. Indirect jumps and returns have no
+ * successors; targets outside code or inside an instruction give no edge. A target is looked up in
+ * the section of its branch first and a function entry in the section its {@code st_shndx} names
+ * (see {@link CodeMap}), so the sections of a relocatable object, which all start at address 0,
+ * keep their own blocks.
+ */
+public final class ControlFlowGraph {
+    public static final int EDGE_FALLTHROUGH = 0;
+    public static final int EDGE_TAKEN = 1;
+    public static final int EDGE_JUMP = 2;
+
+    // how an instruction ends its block
+    private static final byte BRANCH = 1;
+    private static final byte JUMP = 2;
+    private static final byte INDIRECT = 3;
+
+    private final List<CodeSection> code;
+    private final CodeMap codeMap;
+    private final BitSet leaders;
+    // first instruction of every block, followed by the instruction count
+    private final int[] blockStart;
+    private final int[] successorStart;
+    private final int[] successors;
+    private final byte[] successorKinds;
+    private final int[] predecessorStart;
+    private final int[] predecessors;
+
+    // names are only decoded from the string table when asked for
+    private final SymbolTable.Symbol[] functionSymbols;
+    private final int[] functionAddrs;
+    private final int[] functionFirstBlocks;
+    private final int[] functionEndBlocks;
+
+    private int transfers;
+    private int[] transferSources = new int[64];
+    private int[] transferTargets = new int[64];
+    private byte[] transferKinds = new byte[64];
+
+    private ControlFlowGraph(ElfFile elf, List<SymbolTable.Symbol> functions) {
+        code = elf.code;
+        codeMap = elf.codeMap;
+        int total = elf.textWords();
+        leaders = new BitSet(total);
+        for (int s = 0; s < code.size(); s++) {
+            if (code.get(s).count > 0) {
+                leaders.set(code.get(s).first);
+            }
+            scan(elf, s);
+        }
+
+        int[] ranges = new int[functions.size() * 2];
+        int[] symbols = new int[functions.size()];
+        int found = 0;
+        for (int i = 0; i < functions.size(); i++) {
+            SymbolTable.Symbol function = functions.get(i);
+            int s = codeMap.sectionOf(function.getIndex(), function.getValue());
+            int from = indexOf(s, function.getValue());
+            if (function.getSize() <= 0 || from < 0) {
+                continue;
+            }
+            CodeSection section = code.get(s);
+            long end = (function.getValue() & 0xffffffffL) - (section.addr & 0xffffffffL)
+                    + (function.getSize() & 0xffffffffL);
+            int to = section.first + section.indexAt(end);
+            leaders.set(from);
+            if (to < section.first + section.count) {
+                leaders.set(to);
+            }
+            ranges[found * 2] = from;
+            ranges[found * 2 + 1] = to;
+            symbols[found++] = i;
+        }
+
+        int blocks = leaders.cardinality();
+        blockStart = new int[blocks + 1];
+        for (int b = 0, index = leaders.nextSetBit(0); index >= 0; index = leaders.nextSetBit(index + 1)) {
+            blockStart[b++] = index;
+        }
+        blockStart[blocks] = total;
+
+        successorStart = new int[blocks + 1];
+        int[] targets = new int[blocks * 2];
+        byte[] kinds = new byte[blocks * 2];
+        int edges = 0;
+        int transfer = 0;
+        int section = 0;
+        for (int b = 0; b < blocks; b++) {
+            successorStart[b] = edges;
+            int last = blockStart[b + 1] - 1;
+            while (blockStart[b] >= code.get(section).first + code.get(section).count) {
+                section++;
+            }
+            boolean fallsThrough = blockStart[b + 1] < code.get(section).first + code.get(section).count;
+            while (transfer < transfers && transferSources[transfer] < last) {
+                transfer++;
+            }
+            byte kind = transfer < transfers && transferSources[transfer] == last ? transferKinds[transfer] : 0;
+            int target = kind != 0 ? transferTargets[transfer] : -1;
+            if (kind == JUMP || kind == INDIRECT) {
+                fallsThrough = false;
+            }
+            if (fallsThrough) {
+                targets[edges] = b + 1;
+                kinds[edges++] = EDGE_FALLTHROUGH;
+            }
+            if (target >= 0) {
+                targets[edges] = blockAt(target);
+                kinds[edges++] = (byte) (kind == BRANCH ? EDGE_TAKEN : EDGE_JUMP);
+            }
+        }
+        successorStart[blocks] = edges;
+        successors = Arrays.copyOf(targets, edges);
+        successorKinds = Arrays.copyOf(kinds, edges);
+        transferSources = null;
+        transferTargets = null;
+        transferKinds = null;
+
+        predecessorStart = new int[blocks + 1];
+        for (int e = 0; e < edges; e++) {
+            predecessorStart[successors[e] + 1]++;
+        }
+        for (int b = 0; b < blocks; b++) {
+            predecessorStart[b + 1] += predecessorStart[b];
+        }
+        predecessors = new int[edges];
+        int[] fill = Arrays.copyOf(predecessorStart, blocks);
+        for (int b = 0; b < blocks; b++) {
+            for (int e = successorStart[b]; e < successorStart[b + 1]; e++) {
+                predecessors[fill[successors[e]]++] = b;
+            }
+        }
+
+        functionSymbols = new SymbolTable.Symbol[found];
+        functionAddrs = new int[found];
+        functionFirstBlocks = new int[found];
+        functionEndBlocks = new int[found];
+        for (int f = 0; f < found; f++) {
+            SymbolTable.Symbol function = functions.get(symbols[f]);
+            functionSymbols[f] = function;
+            functionAddrs[f] = function.getValue();
+            functionFirstBlocks[f] = blockAt(ranges[f * 2]);
+            functionEndBlocks[f] = ranges[f * 2 + 1] < total ? blockAt(ranges[f * 2 + 1]) : blocks;
+        }
+    }
+
+    /**
+     * Builds the graph of the file's executable sections, with the FUNC symbols of {@code .symtab}
+     * that have a size and start at an instruction as functions.
+     */
+    static ControlFlowGraph build(ElfFile elf) {
+        return new ControlFlowGraph(elf, elf.symtab.functions());
+    }
+
+    private void scan(ElfFile elf, int s) {
+        CodeSection section = code.get(s);
+        for (int i = 0; i < section.count; i++) {
+            int x = elf.word(section, i);
+            long decoded = Decoder.decode(x, section.compressed);
+            int mnemonic = Decoder.mnemonic(decoded);
+            byte kind;
+            if (Mnemonic.format(mnemonic) == Mnemonic.FORMAT_BRANCH) {
+                kind = BRANCH;
+            } else if (mnemonic == Mnemonic.JAL) {
+                kind = Decoder.rd(decoded) == 0 ? JUMP : 0;
+            } else if (mnemonic == Mnemonic.JALR) {
+                kind = Decoder.rd(decoded) == 0 ? INDIRECT : 0;
+            } else {
+                continue;
+            }
+            int target = -1;
+            if (kind != INDIRECT) {
+                int addr = section.addrOf(i) + Decoder.imm(decoded);
+                target = indexOf(codeMap.sectionAt(s, addr), addr);
+                if (target >= 0) {
+                    leaders.set(target);
+                }
+            }
+            if (kind == 0) {
+                continue;
+            }
+            if (i + 1 < section.count) {
+                leaders.set(section.first + i + 1);
+            }
+            if (transfers == transferSources.length) {
+                transferSources = Arrays.copyOf(transferSources, transfers * 2);
+                transferTargets = Arrays.copyOf(transferTargets, transfers * 2);
+                transferKinds = Arrays.copyOf(transferKinds, transfers * 2);
+            }
+            transferSources[transfers] = section.first + i;
+            transferTargets[transfers] = target;
+            transferKinds[transfers++] = kind;
+        }
+    }
+
+    /**
+     * Index of the instruction of the code section that starts at the address, or -1 (also for section -1).
+     */
+    private int indexOf(int s, int addr) {
+        if (s < 0 || !codeMap.contains(s, addr)) {
+            return -1;
+        }
+        CodeSection section = code.get(s);
+        long offset = (addr & 0xffffffffL) - (section.addr & 0xffffffffL);
+        int index = section.indexAt(offset);
+        return section.startOf(index) == offset ? section.first + index : -1;
+    }
+
+    public int blockCount() {
+        return blockStart.length - 1;
+    }
+
+    public boolean isLeader(int index) {
+        return leaders.get(index);
+    }
+
+    /**
+     * Block that holds the instruction index.
+     */
+    public int blockAt(int index) {
+        int b = Arrays.binarySearch(blockStart, 0, blockStart.length - 1, index);
+        return b >= 0 ? b : -b - 2;
+    }
+
+    /**
+     * Index of the block's first instruction.
+     */
+    public int getBlockStart(int block) {
+        return blockStart[block];
+    }
+
+    /**
+     * Index after the block's last instruction.
+     */
+    public int getBlockEnd(int block) {
+        return blockStart[block + 1];
+    }
+
+    public int getBlockAddr(int block) {
+        int index = blockStart[block];
+        CodeSection section = code.get(codeMap.sectionOfIndex(index));
+        return section.addrOf(index - section.first);
+    }
+
+    public int successorCount(int block) {
+        return successorStart[block + 1] - successorStart[block];
+    }
+
+    public int getSuccessor(int block, int i) {
+        return successors[successorStart[block] + i];
+    }
+
+    /**
+     * One of {@link #EDGE_FALLTHROUGH}, {@link #EDGE_TAKEN}, {@link #EDGE_JUMP}.
+     */
+    public int getSuccessorKind(int block, int i) {
+        return successorKinds[successorStart[block] + i];
+    }
+
+    public int predecessorCount(int block) {
+        return predecessorStart[block + 1] - predecessorStart[block];
+    }
+
+    public int getPredecessor(int block, int i) {
+        return predecessors[predecessorStart[block] + i];
+    }
+
+    public int functionCount() {
+        return functionSymbols.length;
+    }
+
+    public String getFunctionName(int function) {
+        return functionSymbols[function].getName();
+    }
+
+    public int getFunctionAddr(int function) {
+        return functionAddrs[function];
+    }
+
+    /**
+     * First block of the function; its blocks are {@code [first, end)}, the entry block first.
+     */
+    public int getFunctionFirstBlock(int function) {
+        return functionFirstBlocks[function];
+    }
+
+    public int getFunctionEndBlock(int function) {
+        return functionEndBlocks[function];
+    }
+
+    /**
+     * Comment line put in the listing before the block's first instruction:
+     * {@code # bb<n>}, then {@code <- } its predecessors and {@code -> } its successors.
+     */
+    void writeBlock(ListingWriter writer, int block) throws IOException {
+        writer.write("   # bb").decimal(block);
+        if (predecessorCount(block) > 0) {
+            writer.write("  <-");
+            for (int i = 0; i < predecessorCount(block); i++) {
+                writer.write(" bb").decimal(getPredecessor(block, i));
+            }
+        }
+        if (successorCount(block) > 0) {
+            writer.write("  ->");
+            for (int i = 0; i < successorCount(block); i++) {
+                writer.write(" bb").decimal(getSuccessor(block, i));
+            }
+        }
+        writer.write('\n');
+    }
+}
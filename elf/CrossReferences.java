@@ -0,0 +1,353 @@
+package elf;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cross-reference index of the executable sections: every {@code jal}, branch and resolvable
+ * {@code jalr} as a reference from its address to its target, with the FUNC symbols that contain
+ * both ends. Both ends are taken in a code section: a target is looked up in the section of its
+ * reference first (see {@link CodeMap#sectionAt}), and a function belongs to the section its
+ * {@code st_shndx} names, so references of a relocatable object, whose sections all start at
+ * address 0, go to the right function. A {@code jalr} is resolved when the instruction before it sets its base register with
+ * {@code auipc} or {@code lui}, as the {@code call} and {@code tail} pseudo-instructions do.
+ * <p>
+ * References are kept in flat arrays in address order, and indexed in compressed-row form by
+ * the function they leave and the function they enter, and by target section and address; callers
+ * and callees of a function take time proportional to their number.
+ */
+public final class CrossReferences {
+    /**
+     * {@code jal} or resolved {@code jalr} that links (rd is not zero).
+     */
+    public static final int CALL = 0;
+    /**
+     * {@code jal} or resolved {@code jalr} to zero: an unconditional jump or tail call.
+     */
+    public static final int JUMP = 1;
+    public static final int BRANCH = 2;
+
+    private int count;
+    private int[] sources = new int[64];
+    private int[] targets = new int[64];
+    private int[] sourceSections = new int[64];
+    private int[] targetSections = new int[64];
+    private byte[] kinds = new byte[64];
+
+    // sized FUNC symbols by section and address
+    private final FunctionIndex functions;
+
+    private final int[] sourceFunctions;
+    private final int[] targetFunctions;
+    // references leaving each function, then those entering it
+    private final int[] outgoingStart;
+    private final int[] outgoing;
+    private final int[] incomingStart;
+    private final int[] incoming;
+    // references by target section (-1 first), each section's ordered by target address
+    private final int[] byTargetStart;
+    private final int[] byTarget;
+
+    private CrossReferences(ElfFile elf, List<SymbolTable.Symbol> functions) {
+        for (int s = 0; s < elf.code.size(); s++) {
+            scan(elf, s);
+        }
+        sources = Arrays.copyOf(sources, count);
+        targets = Arrays.copyOf(targets, count);
+        sourceSections = Arrays.copyOf(sourceSections, count);
+        targetSections = Arrays.copyOf(targetSections, count);
+        kinds = Arrays.copyOf(kinds, count);
+
+        this.functions = new FunctionIndex(functions, elf.codeMap);
+        int sized = this.functions.size();
+
+        sourceFunctions = new int[count];
+        targetFunctions = new int[count];
+        int[] targetGroups = new int[count];
+        for (int ref = 0; ref < count; ref++) {
+            sourceFunctions[ref] = functionAt(sourceSections[ref], sources[ref]);
+            targetFunctions[ref] = functionAt(targetSections[ref], targets[ref]);
+            targetGroups[ref] = targetSections[ref] + 1;
+        }
+        outgoingStart = new int[sized + 1];
+        outgoing = group(sourceFunctions, outgoingStart);
+        incomingStart = new int[sized + 1];
+        incoming = group(targetFunctions, incomingStart);
+
+        byTargetStart = new int[elf.code.size() + 2];
+        byTarget = group(targetGroups, byTargetStart);
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (targets[byTarget[i]] & 0xffffffffL) << 32 | byTarget[i];
+        }
+        for (int group = 0; group + 1 < byTargetStart.length; group++) {
+            Arrays.sort(keys, byTargetStart[group], byTargetStart[group + 1]);
+        }
+        for (int i = 0; i < count; i++) {
+            byTarget[i] = (int) keys[i];
+        }
+    }
+
+    /**
+     * Builds the index of the file's executable sections, with its sized FUNC symbols as functions.
+     */
+    static CrossReferences build(ElfFile elf) {
+        return new CrossReferences(elf, elf.symtab.functions());
+    }
+
+    private void scan(ElfFile elf, int s) {
+        CodeSection section = elf.code.get(s);
+        CodeMap code = elf.codeMap;
+        int previous = Mnemonic.UNKNOWN;
+        int previousRd = 0;
+        int previousValue = 0;
+        for (int i = 0; i < section.count; i++) {
+            int x = elf.word(section, i);
+            int addr = section.addrOf(i);
+            long decoded = Decoder.decode(x, section.compressed);
+            int mnemonic = Decoder.mnemonic(decoded);
+            int rd = Decoder.rd(decoded);
+            if (Decoder.hasTarget(decoded)) {
+                int kind = mnemonic != Mnemonic.JAL ? BRANCH : rd == 0 ? JUMP : CALL;
+                add(s, addr, code, addr + Decoder.imm(decoded), kind);
+            } else if (mnemonic == Mnemonic.JALR && (previous == Mnemonic.AUIPC || previous == Mnemonic.LUI)
+                    && previousRd == Decoder.rs1(decoded) && previousRd != 0) {
+                add(s, addr, code, previousValue + ElfFile.to12Bits(Decoder.imm(decoded)), rd == 0 ? JUMP : CALL);
+            }
+            previous = mnemonic;
+            previousRd = rd;
+            previousValue = Decoder.imm(decoded) << 12;
+            if (mnemonic == Mnemonic.AUIPC) {
+                previousValue += addr;
+            }
+        }
+    }
+
+    private void add(int section, int source, CodeMap code, int target, int kind) {
+        if (count == sources.length) {
+            sources = Arrays.copyOf(sources, count * 2);
+            targets = Arrays.copyOf(targets, count * 2);
+            sourceSections = Arrays.copyOf(sourceSections, count * 2);
+            targetSections = Arrays.copyOf(targetSections, count * 2);
+            kinds = Arrays.copyOf(kinds, count * 2);
+        }
+        sources[count] = source;
+        targets[count] = target;
+        sourceSections[count] = section;
+        targetSections[count] = code.sectionAt(section, target);
+        kinds[count++] = (byte) kind;
+    }
+
+    /**
+     * Counting sort of the references by function or other group (-1 left out); fills {@code start}
+     * and returns the references.
+     */
+    private int[] group(int[] functionOf, int[] start) {
+        for (int ref = 0; ref < count; ref++) {
+            if (functionOf[ref] >= 0) {
+                start[functionOf[ref] + 1]++;
+            }
+        }
+        for (int f = 0; f + 1 < start.length; f++) {
+            start[f + 1] += start[f];
+        }
+        int[] refs = new int[start[start.length - 1]];
+        int[] fill = Arrays.copyOf(start, start.length - 1);
+        for (int ref = 0; ref < count; ref++) {
+            if (functionOf[ref] >= 0) {
+                refs[fill[functionOf[ref]]++] = ref;
+            }
+        }
+        return refs;
+    }
+
+    public int referenceCount() {
+        return count;
+    }
+
+    public int getSource(int ref) {
+        return sources[ref];
+    }
+
+    public int getTarget(int ref) {
+        return targets[ref];
+    }
+
+    /**
+     * Code section of the reference: its position among the executable sections in file order.
+     */
+    public int getSourceSection(int ref) {
+        return sourceSections[ref];
+    }
+
+    /**
+     * Code section holding the target, or -1 if it lies outside code.
+     */
+    public int getTargetSection(int ref) {
+        return targetSections[ref];
+    }
+
+    /**
+     * One of {@link #CALL}, {@link #JUMP}, {@link #BRANCH}.
+     */
+    public int getKind(int ref) {
+        return kinds[ref];
+    }
+
+    /**
+     * Function containing the reference, or -1.
+     */
+    public int getSourceFunction(int ref) {
+        return sourceFunctions[ref];
+    }
+
+    /**
+     * Function containing the target, or -1.
+     */
+    public int getTargetFunction(int ref) {
+        return targetFunctions[ref];
+    }
+
+    public int functionCount() {
+        return functions.size();
+    }
+
+    public String getFunctionName(int function) {
+        return functions.getSymbol(function).getName();
+    }
+
+    public int getFunctionAddr(int function) {
+        return functions.getSymbol(function).getValue();
+    }
+
+    public int getFunctionSize(int function) {
+        return functions.getSymbol(function).getSize();
+    }
+
+    /**
+     * Code section the function belongs to, or -1.
+     */
+    public int getFunctionSection(int function) {
+        return functions.getSection(function);
+    }
+
+    /**
+     * The function of that name (the first by section and address if there are several), or -1.
+     * Names are compared against the string table bytes, so none is decoded.
+     */
+    public int findFunction(String name) {
+        for (int f = 0; f < functions.size(); f++) {
+            if (functions.getSymbol(f).nameEquals(name)) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The function of the code section whose bytes contain the address, or -1; of nested ones the
+     * innermost.
+     */
+    public int functionAt(int section, int addr) {
+        return functions.find(section, addr);
+    }
+
+    /**
+     * Number of references made from inside the function: its calls, jumps and branches.
+     */
+    public int outgoingCount(int function) {
+        return outgoingStart[function + 1] - outgoingStart[function];
+    }
+
+    public int getOutgoing(int function, int i) {
+        return outgoing[outgoingStart[function] + i];
+    }
+
+    /**
+     * Number of references into the function, its own branches included.
+     */
+    public int incomingCount(int function) {
+        return incomingStart[function + 1] - incomingStart[function];
+    }
+
+    public int getIncoming(int function, int i) {
+        return incoming[incomingStart[function] + i];
+    }
+
+    private int firstTo(int section, long target) {
+        int lo = byTargetStart[section + 1];
+        int hi = byTargetStart[section + 2];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((targets[byTarget[mid]] & 0xffffffffL) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Number of references whose target is exactly the address of the code section (-1 for outside code).
+     */
+    public int referenceCountTo(int section, int addr) {
+        return firstTo(section, (addr & 0xffffffffL) + 1) - firstTo(section, addr & 0xffffffffL);
+    }
+
+    public int getReferenceTo(int section, int addr, int i) {
+        return byTarget[firstTo(section, addr & 0xffffffffL) + i];
+    }
+
+    private static String kindName(int kind) {
+        return kind == CALL ? "call" : kind == JUMP ? "jump" : "branch";
+    }
+
+    private void where(ListingWriter writer, int addr, int function) throws IOException {
+        if (function < 0) {
+            writer.write("0x").hex(addr, 0);
+            return;
+        }
+        writer.write(getFunctionName(function));
+        int offset = addr - getFunctionAddr(function);
+        if (offset != 0) {
+            writer.write("+0x").hex(offset, 0);
+        }
+    }
+
+    private void reference(ListingWriter writer, int ref, int sourceFunction, int targetFunction) throws IOException {
+        writer.spaces(3).hex(sources[ref], 5).write(":\t");
+        where(writer, sources[ref], sourceFunction);
+        writer.write(" -> ");
+        where(writer, targets[ref], targetFunction);
+        writer.write('\t').write(kindName(kinds[ref])).write('\n');
+    }
+
+    /**
+     * Callers of the function (references into it from other functions or from outside any
+     * function) and its callees (references out of it), one per line with address and kind.
+     */
+    public String describe(int function) {
+        ListingWriter writer = new ListingWriter();
+        try {
+            writer.write("callers of ").write(getFunctionName(function)).write(":\n");
+            for (int i = 0; i < incomingCount(function); i++) {
+                int ref = getIncoming(function, i);
+                if (sourceFunctions[ref] != function) {
+                    reference(writer, ref, sourceFunctions[ref], function);
+                }
+            }
+            writer.write("callees of ").write(getFunctionName(function)).write(":\n");
+            for (int i = 0; i < outgoingCount(function); i++) {
+                int ref = getOutgoing(function, i);
+                if (targetFunctions[ref] != function) {
+                    reference(writer, ref, function, targetFunctions[ref]);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package elf;
+
+/**
+ * Direct-mapped cache from a raw instruction word to its decoded form and its rendered
+ * listing text (everything after the address column), counted separately. Only words whose text
+ * does not depend on their address are cached; jumps and branches bypass it. A 16-bit instruction is keyed by its
+ * halfword and told apart from a 32-bit word of the same value by its decoded form.
+ * Not thread-safe: use one per writer.
+ */
+public final class DecodeCache {
+    private final int shift;
+    private final int[] words;
+    private final long[] decoded;
+    private final byte[][] lines;
+    private final boolean[] filled;
+
+    // rendered lines
+    private long hits;
+    private long misses;
+    private long bypassed;
+    // decoded forms
+    private long decodeHits;
+    private long decodeMisses;
+    private long decodeBypassed;
+
+    /**
+     * @param entries number of slots, rounded up to a power of two
+     */
+    public DecodeCache(int entries) {
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(entries, 2) - 1));
+        shift = 32 - bits;
+        words = new int[1 << bits];
+        decoded = new long[1 << bits];
+        lines = new byte[1 << bits][];
+        filled = new boolean[1 << bits];
+    }
+
+    private int slot(int word) {
+        return (word * 0x9e3779b9) >>> shift;
+    }
+
+    private boolean holds(int i, int word, long decoded) {
+        return filled[i] && words[i] == word && this.decoded[i] == decoded;
+    }
+
+    private void claim(int i, int word, long decoded) {
+        words[i] = word;
+        this.decoded[i] = decoded;
+        lines[i] = null;
+        filled[i] = true;
+    }
+
+    /**
+     * Decoded form of the word, see {@link Decoder#decode(int, boolean)}; pc-relative words are decoded
+     * directly. A hit leaves the slot's rendered text in place for {@link #line}.
+     */
+    public long decode(int word, boolean compressed) {
+        if (Decoder.isPcRelative(word, compressed)) {
+            decodeBypassed++;
+            return Decoder.decode(word, compressed);
+        }
+        boolean half = compressed && Decoder.isCompressed(word);
+        int i = slot(word);
+        if (filled[i] && words[i] == word && ((decoded[i] & Decoder.COMPRESSED) != 0) == half) {
+            decodeHits++;
+            return decoded[i];
+        }
+        decodeMisses++;
+        claim(i, word, Decoder.decode(word, compressed));
+        return decoded[i];
+    }
+
+    /**
+     * Cached listing text of the instruction, or null if it has not been rendered yet (the slot is
+     * then claimed for it) or its text shows a target.
+     */
+    byte[] line(int word, long decoded) {
+        if (Decoder.hasTarget(decoded)) {
+            bypassed++;
+            return null;
+        }
+        int i = slot(word);
+        if (!holds(i, word, decoded)) {
+            claim(i, word, decoded);
+        } else if (lines[i] != null) {
+            hits++;
+            return lines[i];
+        }
+        // claimed by decode() or an earlier call but not rendered yet
+        misses++;
+        return null;
+    }
+
+    void putLine(int word, long decoded, byte[] line) {
+        int i = slot(word);
+        if (holds(i, word, decoded)) {
+            lines[i] = line;
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getBypassed() {
+        return bypassed;
+    }
+
+    public long getDecodeHits() {
+        return decodeHits;
+    }
+
+    public long getDecodeMisses() {
+        return decodeMisses;
+    }
+
+    public long getDecodeBypassed() {
+        return decodeBypassed;
+    }
+
+    @Override
+    public String toString() {
+        return "decode cache: lines " + hits + " hits, " + misses + " misses, " + bypassed + " bypassed; decoded "
+                + decodeHits + " hits, " + decodeMisses + " misses, " + decodeBypassed + " bypassed";
+    }
+}
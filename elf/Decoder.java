@@ -0,0 +1,281 @@
+package elf;
+
+import static elf.Mnemonic.*;
+
+/**
+ * Table-driven RV32IMC decoder. A word is decoded into a packed {@code long}:
+ * bits 0-7 mnemonic id, 8-12 rd, 13-17 rs1, 18-22 rs2, bit 23 {@link #COMPRESSED}, 32-63 immediate.
+ * Register fields are the raw bit fields of the word; {@link Mnemonic#format(int)}
+ * tells which of them are operands. Decoding never allocates.
+ * <p>
+ * With the C extension an instruction whose low two bits are not 11 is 16 bits long; it is
+ * passed around as its halfword and decoded by {@link #decode(int, boolean)} to its RV32I expansion.
+ */
+public final class Decoder {
+    public static final int OP_LUI = 0b0110111;
+    public static final int OP_AUIPC = 0b0010111;
+    public static final int OP_IMM = 0b0010011;
+    public static final int OP = 0b0110011;
+    public static final int OP_FENCE = 0b0001111;
+    public static final int OP_SYSTEM = 0b1110011;
+    public static final int OP_LOAD = 0b0000011;
+    public static final int OP_STORE = 0b0100011;
+    public static final int OP_JAL = 0b1101111;
+    public static final int OP_JALR = 0b1100111;
+    public static final int OP_BRANCH = 0b1100011;
+
+    // set in the decoded form of a 16-bit instruction
+    public static final long COMPRESSED = 1 << 23;
+
+    private static final int IMM_NONE = 0;
+    private static final int IMM_U = 1;
+    private static final int IMM_I = 2;
+    private static final int IMM_I_UNSIGNED = 3;
+    private static final int IMM_SHAMT = 4;
+    private static final int IMM_S = 5;
+    private static final int IMM_B = 6;
+    private static final int IMM_J = 7;
+
+    // marks SYSTEM entries that are told apart by the whole word, not by func3/func7
+    private static final byte SYSTEM = -1;
+
+    private static final int ROWS = 12;
+    // opcode -> row of MNEMONICS, row 0 is all UNKNOWN
+    private static final byte[] ROW = new byte[128];
+    // (row << 10) | (func3 << 7) | func7 -> mnemonic id
+    private static final byte[] MNEMONICS = new byte[ROWS << 10];
+    private static final byte[] IMM_KIND = new byte[COUNT];
+
+    private static int rows = 1;
+
+    private static int row(int opcode) {
+        if (ROW[opcode] == 0) {
+            ROW[opcode] = (byte) rows++;
+        }
+        return ROW[opcode];
+    }
+
+    private static void put(int opcode, int func3, int func7, int id) {
+        MNEMONICS[(row(opcode) << 10) | (func3 << 7) | func7] = (byte) id;
+    }
+
+    private static void putAnyFunc7(int opcode, int func3, int id) {
+        for (int func7 = 0; func7 < 128; func7++) {
+            put(opcode, func3, func7, id);
+        }
+    }
+
+    private static void putAny(int opcode, int id) {
+        for (int func3 = 0; func3 < 8; func3++) {
+            putAnyFunc7(opcode, func3, id);
+        }
+    }
+
+    private static void imm(int kind, int... ids) {
+        for (int id : ids) {
+            IMM_KIND[id] = (byte) kind;
+        }
+    }
+
+    static {
+        putAny(OP_LUI, LUI);
+        putAny(OP_AUIPC, AUIPC);
+        putAny(OP_FENCE, FENCE);
+        putAny(OP_JAL, JAL);
+
+        putAnyFunc7(OP_IMM, 0b000, ADDI);
+        putAnyFunc7(OP_IMM, 0b010, SLTI);
+        putAnyFunc7(OP_IMM, 0b011, SLTIU);
+        putAnyFunc7(OP_IMM, 0b100, XORI);
+        putAnyFunc7(OP_IMM, 0b110, ORI);
+        putAnyFunc7(OP_IMM, 0b111, ANDI);
+        putAnyFunc7(OP_IMM, 0b001, SLLI);
+        put(OP_IMM, 0b101, 0b0000000, SRLI);
+        put(OP_IMM, 0b101, 0b0000001, SRLI);
+        put(OP_IMM, 0b101, 0b0100000, SRAI);
+        put(OP_IMM, 0b101, 0b0100001, SRAI);
+
+        int[] base = {ADD, SLL, SLT, SLTU, XOR, SRL, OR, AND};
+        int[] m = {MUL, MULH, MULHSU, MULHU, DIV, DIVU, REM, REMU};
+        for (int func3 = 0; func3 < 8; func3++) {
+            put(OP, func3, 0b0000000, base[func3]);
+            put(OP, func3, 0b0000001, m[func3]);
+        }
+        put(OP, 0b000, 0b0100000, SUB);
+        put(OP, 0b101, 0b0100000, SRA);
+
+        putAnyFunc7(OP_SYSTEM, 0b000, SYSTEM);
+
+        int[] loads = {LB, LH, LW, UNKNOWN, LBU, LHU};
+        for (int func3 = 0; func3 < loads.length; func3++) {
+            putAnyFunc7(OP_LOAD, func3, loads[func3]);
+        }
+        putAnyFunc7(OP_STORE, 0b000, SB);
+        putAnyFunc7(OP_STORE, 0b001, SH);
+        putAnyFunc7(OP_STORE, 0b010, SW);
+        putAnyFunc7(OP_JALR, 0b000, JALR);
+
+        int[] branches = {BEQ, BNE, UNKNOWN, UNKNOWN, BLT, BGE, BLTU, BGEU};
+        for (int func3 = 0; func3 < 8; func3++) {
+            putAnyFunc7(OP_BRANCH, func3, branches[func3]);
+        }
+
+        imm(IMM_U, LUI, AUIPC);
+        imm(IMM_I, ADDI, SLTI, XORI, ORI, ANDI);
+        imm(IMM_I_UNSIGNED, SLTIU, LB, LH, LW, LBU, LHU, JALR);
+        imm(IMM_SHAMT, SLLI, SRLI, SRAI);
+        imm(IMM_S, SB, SH, SW);
+        imm(IMM_B, BEQ, BNE, BLT, BGE, BLTU, BGEU);
+        imm(IMM_J, JAL);
+    }
+
+    private Decoder() {
+    }
+
+    public static long decode(int word) {
+        int opcode = word & 0b1111111;
+        int id = MNEMONICS[(ROW[opcode] << 10) | (word & 0x7000) >>> 5 | word >>> 25];
+        if (id == SYSTEM) {
+            id = decodeSystem(word);
+        }
+        int imm;
+        switch (IMM_KIND[id]) {
+            case IMM_U:
+                imm = word >>> 12;
+                break;
+            case IMM_I:
+                imm = word >> 20;
+                break;
+            case IMM_I_UNSIGNED:
+                imm = word >>> 20;
+                break;
+            case IMM_SHAMT:
+                imm = (word >>> 20) & 0x1f;
+                break;
+            case IMM_S:
+                imm = ((word >>> 7) & 0x1f) | ((word >>> 25) << 5);
+                break;
+            case IMM_B:
+                imm = branchOffset(word);
+                break;
+            case IMM_J:
+                imm = jumpOffset(word);
+                break;
+            default:
+                imm = 0;
+        }
+        return pack(id, (word >>> 7) & 0x1f, (word >>> 15) & 0x1f, (word >>> 20) & 0x1f, imm);
+    }
+
+    /**
+     * Decodes a word of code with the C extension on or off: with it, a word whose low two bits
+     * are not 11 is a 16-bit instruction, otherwise every word is a 32-bit one.
+     */
+    public static long decode(int word, boolean compressed) {
+        return compressed && isCompressed(word) ? CompressedDecoder.decode(word) : decode(word);
+    }
+
+    /**
+     * Whether a word read where an instruction starts is a 16-bit one, when the C extension is on.
+     */
+    public static boolean isCompressed(int word) {
+        return (word & 0b11) != 0b11;
+    }
+
+    /**
+     * Length in bytes of a decoded instruction, 2 or 4.
+     */
+    public static int length(long decoded) {
+        return (decoded & COMPRESSED) != 0 ? 2 : 4;
+    }
+
+    private static int decodeSystem(int word) {
+        switch (word >>> 7) {
+            case (0):
+                return ECALL;
+            case (0b10000000000000):
+                return EBREAK;
+            case (0b100000000000000):
+                return URET;
+            case (0b0001000000100000000000000):
+                return SRET;
+            case (0b0011000000100000000000000):
+                return MRET;
+            case (0b0001000001010000000000000):
+                return WFI;
+            default:
+                return (word >>> 25) == 0b0001001 ? SFENCE_VMA : UNKNOWN;
+        }
+    }
+
+    // Offsets are sign-extended from bit 11 (branches) and bit 19 (jal), as the listing always printed them.
+    private static int branchOffset(int word) {
+        int offset = ((word >>> 31) << 12) | (((word >>> 25) & 0x3f) << 5)
+                | (((word >>> 8) & 0xf) << 1) | (((word >>> 7) & 1) << 11);
+        return (offset << 20) >> 20;
+    }
+
+    private static int jumpOffset(int word) {
+        int offset = ((word >>> 31) << 20) | (((word >>> 21) & 0x3ff) << 1)
+                | (((word >>> 20) & 1) << 11) | (((word >>> 12) & 0xff) << 12);
+        return (offset << 12) >> 12;
+    }
+
+    /**
+     * Whether the word has a pc-relative target (jal and every branch opcode, even with an unknown func3).
+     */
+    public static boolean isPcRelative(int word) {
+        int opcode = word & 0b1111111;
+        return opcode == OP_JAL || opcode == OP_BRANCH;
+    }
+
+    /**
+     * Target offset of a word for which {@link #isPcRelative(int)} holds.
+     */
+    public static int targetOffset(int word) {
+        return (word & 0b1111111) == OP_JAL ? jumpOffset(word) : branchOffset(word);
+    }
+
+    /**
+     * {@link #isPcRelative(int)} with the C extension on or off, see {@link #decode(int, boolean)}.
+     */
+    public static boolean isPcRelative(int word, boolean compressed) {
+        return compressed && isCompressed(word) ? CompressedDecoder.isPcRelative(word) : isPcRelative(word);
+    }
+
+    public static int targetOffset(int word, boolean compressed) {
+        return compressed && isCompressed(word) ? CompressedDecoder.targetOffset(word) : targetOffset(word);
+    }
+
+    /**
+     * Whether the listing of a decoded instruction shows a target, and so depends on its address.
+     */
+    public static boolean hasTarget(long decoded) {
+        int format = Mnemonic.format(mnemonic(decoded));
+        return format == FORMAT_JUMP || format == FORMAT_BRANCH;
+    }
+
+    public static long pack(int mnemonic, int rd, int rs1, int rs2, int imm) {
+        return mnemonic | rd << 8 | rs1 << 13 | rs2 << 18 | (long) imm << 32;
+    }
+
+    public static int mnemonic(long decoded) {
+        return (int) decoded & 0xff;
+    }
+
+    public static int rd(long decoded) {
+        return (int) (decoded >>> 8) & 0x1f;
+    }
+
+    public static int rs1(long decoded) {
+        return (int) (decoded >>> 13) & 0x1f;
+    }
+
+    public static int rs2(long decoded) {
+        return (int) (decoded >>> 18) & 0x1f;
+    }
+
+    public static int imm(long decoded) {
+        return (int) (decoded >>> 32);
+    }
+}
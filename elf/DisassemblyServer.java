@@ -0,0 +1,355 @@
+package elf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived disassembler on a localhost HTTP port, so that repeated queries skip JVM start-up,
+ * JIT warm-up and parsing. Parsed files are kept in an LRU cache keyed by path, modification time
+ * and size, bounded by the bytes it holds (file images plus rendered listings); a file that changes
+ * on disk gets a new key and is parsed again. A file is parsed only as far as its queries need:
+ * headers and symbols for all of them, jump and branch labels for listings, and the whole code
+ * only for {@code /file}.
+ * <p>
+ * Requests (GET, plain text answers, errors as 4xx/5xx with the message as body: 400 for a missing
+ * or malformed parameter, 404 for a file, symbol or function that is not there):
+ * <pre>
+ * /file?path=P                    whole listing of P, as {@link ElfFile#write(String)} writes it
+ * /function?path=P&amp;name=F         listing of symbol F
+ * /range?path=P&amp;from=A&amp;to=B       listing of the instructions in [A, B)
+ * /symbolize?path=P&amp;addr=A        name+0xoffset of the symbol containing A
+ * /xrefs?path=P&amp;name=F            callers and callees of function F
+ * /stats                          cache figures
+ * </pre>
+ * Addresses are decimal or 0x-prefixed hex.
+ */
+public final class DisassemblyServer {
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final boolean mapped;
+    private final ModelCache cache;
+    private final PrintStream log;
+
+    public DisassemblyServer(int port, int threads, boolean mapped, long maxCacheBytes, PrintStream log)
+            throws IOException {
+        this.mapped = mapped;
+        this.cache = new ModelCache(maxCacheBytes);
+        this.log = log;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "elf-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(workers);
+        server.createContext("/file", exchange -> handle(exchange, query -> model(query).listing()));
+        server.createContext("/function", exchange -> handle(exchange,
+                query -> bytes(model(query).labelled().disassemble(required(query, "name")))));
+        server.createContext("/range", exchange -> handle(exchange, query -> bytes(model(query).labelled().disassemble(
+                address(required(query, "from")), address(required(query, "to"))))));
+        server.createContext("/symbolize", exchange -> handle(exchange, query -> {
+            String name = model(query).elf.symbolize(address(required(query, "addr")));
+            if (name == null) {
+                throw new IllegalArgumentException("No symbol at " + required(query, "addr"));
+            }
+            return bytes(name + "\n");
+        }));
+        server.createContext("/xrefs", exchange -> handle(exchange, query -> {
+            CrossReferences xrefs = model(query).elf.getCrossReferences();
+            int function = xrefs.findFunction(required(query, "name"));
+            if (function < 0) {
+                throw new IllegalArgumentException("Function not found: " + required(query, "name"));
+            }
+            return bytes(xrefs.describe(function));
+        }));
+        server.createContext("/stats", exchange -> handle(exchange, query -> bytes(cache + "\n")));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private interface Handler {
+        byte[] answer(Map<String, String> query) throws IOException;
+    }
+
+    /**
+     * A query parameter that is missing or cannot be read, answered with 400 rather than 404.
+     */
+    private static final class BadRequest extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequest(String message) {
+            super(message);
+        }
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        int status = 200;
+        byte[] body;
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                status = 405;
+                body = bytes("Only GET is supported\n");
+            } else {
+                body = handler.answer(query(exchange.getRequestURI().getRawQuery()));
+            }
+        } catch (BadRequest e) {
+            status = 400;
+            body = bytes(e.getMessage() + "\n");
+        } catch (IllegalArgumentException e) {
+            status = 404;
+            body = bytes(e.getMessage() + "\n");
+        } catch (IllegalStateException e) {
+            status = 422;
+            body = bytes(e.getMessage() + "\n");
+        } catch (RuntimeException e) {
+            status = 500;
+            body = bytes(e + "\n");
+            log.println(exchange.getRequestURI() + ": " + e);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> query = new HashMap<>();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new BadRequest("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static int address(String value) {
+        try {
+            if (value.startsWith("0x") || value.startsWith("0X")) {
+                return Integer.parseUnsignedInt(value.substring(2), 16);
+            }
+            return Integer.parseUnsignedInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequest("Bad address " + value);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Model model(Map<String, String> query) throws IOException {
+        Path path;
+        try {
+            path = Paths.get(required(query, "path")).toAbsolutePath().normalize();
+        } catch (InvalidPathException e) {
+            throw new BadRequest("Bad path " + query.get("path"));
+        }
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("Input file not found: " + path);
+        }
+        Key key = new Key(path.toString(), Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+        Model model = cache.get(key);
+        if (model == null) {
+            ElfFile elf = new ElfFile(path.toString(), mapped);
+            elf.parseHeaders();
+            model = cache.put(key, new Model(elf, key.size));
+        }
+        return model;
+    }
+
+    private static final class Key {
+        final String path;
+        final long mtime;
+        final long size;
+
+        Key(String path, long mtime, long size) {
+            this.path = path;
+            this.mtime = mtime;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return path.equals(other.path) && mtime == other.mtime && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, mtime, size);
+        }
+    }
+
+    /**
+     * A file with its headers parsed and, once asked for, its whole listing. The listing is built
+     * under the model's lock and charged to the cache after it is released, so the two locks are
+     * never held together.
+     */
+    private final class Model {
+        final ElfFile elf;
+        final long fileBytes;
+        private volatile byte[] listing;
+
+        // guarded by the cache: whether it is in the cache and the bytes charged for it
+        private boolean cached;
+        private long charged;
+
+        Model(ElfFile elf, long fileBytes) {
+            this.elf = elf;
+            this.fileBytes = fileBytes;
+        }
+
+        /**
+         * The file with L&lt;n&gt; labels given out, as the whole listing names them.
+         */
+        ElfFile labelled() {
+            elf.labelCode();
+            return elf;
+        }
+
+        byte[] listing() {
+            byte[] built = listing;
+            if (built == null) {
+                synchronized (this) {
+                    if (listing == null) {
+                        // labels first, so that parsing adds none while other queries read them
+                        labelled().parse();
+                        listing = elf.listing();
+                    }
+                    built = listing;
+                }
+                cache.charge(this);
+            }
+            return built;
+        }
+
+        /**
+         * Bytes held, read without locking.
+         */
+        long weight() {
+            byte[] built = listing;
+            return fileBytes + (built == null ? 0 : built.length);
+        }
+    }
+
+    /**
+     * Access-ordered map that drops the least recently used models once they hold more than the limit.
+     * The most recent model always stays, however large. Every model is charged what it weighed when
+     * it was added or last charged, and exactly that is taken off when it is dropped.
+     */
+    private static final class ModelCache {
+        private final long maxBytes;
+        private final LinkedHashMap<Key, Model> models = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        ModelCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Model get(Key key) {
+            Model model = models.get(key);
+            if (model == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return model;
+        }
+
+        /**
+         * Adds the model unless another thread parsed the same file meanwhile; returns the cached one.
+         */
+        synchronized Model put(Key key, Model model) {
+            Model existing = models.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            models.put(key, model);
+            model.cached = true;
+            model.charged = model.weight();
+            bytes += model.charged;
+            evict();
+            return model;
+        }
+
+        /**
+         * Charges the growth of the model since it was last charged; a model no longer cached is ignored.
+         */
+        synchronized void charge(Model model) {
+            if (!model.cached) {
+                return;
+            }
+            long weight = model.weight();
+            bytes += weight - model.charged;
+            model.charged = weight;
+            evict();
+        }
+
+        private void evict() {
+            Iterator<Model> eldest = models.values().iterator();
+            while (bytes > maxBytes && models.size() > 1) {
+                Model model = eldest.next();
+                bytes -= model.charged;
+                model.cached = false;
+                eldest.remove();
+                evictions++;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ROOT, "%d files, %.1f MB of %.1f MB, %d hits, %d misses, %d evictions",
+                    models.size(), bytes / 1e6, maxBytes / 1e6, hits, misses, evictions);
+        }
+    }
+}
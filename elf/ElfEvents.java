@@ -0,0 +1,132 @@
+package elf;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.MemoryAddress;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted around the phases of {@link ElfFile}. They are enabled
+ * by default in a recording and can be turned off by name like any JDK event. When no recording
+ * runs, {@code begin}, {@code end} and {@code shouldCommit} are no-ops that the JIT removes
+ * together with the event object, and fields are only filled in once {@code shouldCommit} holds.
+ */
+public final class ElfEvents {
+    private static final String CATEGORY = "RISC-V Disassembler";
+
+    private ElfEvents() {
+    }
+
+    @Name("elf.Load")
+    @Label("ELF Load")
+    @Description("Input file read or mapped into memory")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Load extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        @Label("Mapped")
+        boolean mapped;
+    }
+
+    @Name("elf.SectionParse")
+    @Label("ELF Section Parse")
+    @Description("Section header table parsed and code sections found")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class SectionParse extends Event {
+        @Label("Sections")
+        int sections;
+
+        @Label("Code Sections")
+        int codeSections;
+    }
+
+    @Name("elf.SymtabParse")
+    @Label("ELF Symtab Parse")
+    @Description(".symtab read into symbols")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class SymtabParse extends Event {
+        @Label("Symbols")
+        int symbols;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("elf.Decode")
+    @Label("ELF Decode")
+    @Description("Instructions of one chunk, batch or function decoded (and rendered, for functions)")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Decode extends Event {
+        @Label("Section")
+        String section;
+
+        @Label("Start Address")
+        @MemoryAddress
+        long startAddress;
+
+        @Label("End Address")
+        @MemoryAddress
+        long endAddress;
+
+        @Label("Instructions")
+        int instructions;
+    }
+
+    @Name("elf.Write")
+    @Label("ELF Write")
+    @Description("Listing written to the output file")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Write extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Mode")
+        String mode;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /**
+     * Commits a decode event begun before decoding {@code [from, to)} of the section.
+     */
+    static void decoded(Decode event, CodeSection section, int from, int to) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.section = section.name;
+            event.startAddress = section.addrOf(from) & 0xffffffffL;
+            event.endAddress = section.addrOf(to) & 0xffffffffL;
+            event.instructions = to - from;
+            event.commit();
+        }
+    }
+
+    /**
+     * Commits a write event begun before the listing was opened.
+     */
+    static void written(Write event, String path, String mode, long size) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.mode = mode;
+            event.size = size;
+            event.commit();
+        }
+    }
+}
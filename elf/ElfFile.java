@@ -2,8 +2,18 @@ package elf;
 
 import java.io.*;
 import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ElfFile {
     public static final int EI_MAG_ELF = 0x464c457f;
@@ -11,25 +21,35 @@ public class ElfFile {
     public static final byte EI_DATA_LE = 1;
     public static final short E_MACHINE_RISCV = 0xf3;
 
+    public static final int SHT_PROGBITS = 0x01;
     public static final int SHT_SYMTAB = 0x02;
     public static final int SHT_STRTAB = 0x03;
+    public static final int SHT_NOBITS = 0x08;
 
-    List<Instruction> text = new ArrayList<>();
+    public static final int SHF_EXECINSTR = 0x04;
+
+    public static final int EF_RISCV_RVC = 0x0001;
+
+    InstructionStore text;
     SymbolTable symtab = new SymbolTable();
     Labels labels;
+    private SymbolIndex symbolIndex;
+    private ControlFlowGraph controlFlowGraph;
+    private CrossReferences crossReferences;
+    private boolean showBlocks;
+    private boolean codeLabelled;
+
+    private SectionTable sections;
+    // executable sections in header order; their instructions follow each other in text
+    List<CodeSection> code = new ArrayList<>();
+    CodeMap codeMap;
 
-    private int textOffset = -1;
     private int symtabOffset = -1;
-    private int namesOffset = -1;
     private int strtabOffset = -1;
 
-    private int textSize = -1;
     private int symtabSize = -1;
 
-    private int textAddr = -1;
-
     private ByteBuffer bytes;
-    private BufferedWriter out;
     private int bytesRead;
 
     private int EI_MAG;
@@ -42,6 +62,7 @@ public class ElfFile {
     private int e_entry;
     private int e_phoff;
     private int e_shoff;
+    private int e_flags;
     private short e_ehsize;
     private short e_phentsize;
     private short e_phnum;
@@ -51,7 +72,20 @@ public class ElfFile {
 
     private int unknownAddr = 0;
 
-    private void parseHeader() {
+    private static final int CHUNK_WORDS = 1 << 15;
+    private ForkJoinPool pool;
+
+    private DecodeCache decodeCache;
+    private RunStats stats;
+
+    // bump when the listing format changes, so that old cached fragments are not reused
+    private static final int LISTING_CACHE_VERSION = 1;
+
+    private static final int BATCH_WORDS = 1 << 14;
+    private static final int PIPELINE_DEPTH = 4;
+    private static final InstructionStore END_OF_TEXT = new InstructionStore(0);
+
+    void parseHeader() {
         if (bytesRead < 54) {
             ElfError("Only " + bytesRead + " bytes in file");
         }
@@ -66,6 +100,7 @@ public class ElfFile {
         this.e_entry = bytes.getInt(0x18);
         this.e_phoff = bytes.getInt(0x1c);
         this.e_shoff = bytes.getInt(0x20);
+        this.e_flags = bytes.getInt(0x24);
         this.e_ehsize = bytes.getShort(0x28);
         this.e_phentsize = bytes.getShort(0x2a);
         this.e_phnum = bytes.getShort(0x2c);
@@ -92,11 +127,47 @@ public class ElfFile {
     }
 
     public ElfFile(String inputName) {
+        this(inputName, false);
+    }
+
+    /**
+     * Parses an image that is already in memory, e.g. a synthetic one in benchmarks.
+     */
+    ElfFile(ByteBuffer image) {
+        bytes = image.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        bytesRead = bytes.limit();
+    }
+
+    /**
+     * Opens an ELF file. When {@code mapped} is set the file is memory-mapped read-only
+     * instead of being copied onto the heap, so parsing only touches the pages it reads.
+     */
+    public ElfFile(String inputName, boolean mapped) {
+        ElfEvents.Load event = new ElfEvents.Load();
+        event.begin();
         try {
-            byte[] arrayByte = Files.readAllBytes(Paths.get(inputName));
-            bytesRead = arrayByte.length;
-            bytes = ByteBuffer.wrap(arrayByte);
+            if (mapped) {
+                try (FileChannel channel = FileChannel.open(Paths.get(inputName), StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    if (size > Integer.MAX_VALUE) {
+                        ElfError("File is too large to map: " + size + " bytes");
+                    }
+                    bytesRead = (int) size;
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+            } else {
+                byte[] arrayByte = Files.readAllBytes(Paths.get(inputName));
+                bytesRead = arrayByte.length;
+                bytes = ByteBuffer.wrap(arrayByte);
+            }
             bytes.order(ByteOrder.LITTLE_ENDIAN);
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = inputName;
+                event.size = bytesRead;
+                event.mapped = mapped;
+                event.commit();
+            }
         } catch (FileNotFoundException e) {
             throw new IllegalArgumentException("Input file not found: " + e.getMessage());
         } catch (IOException e) {
@@ -104,74 +175,389 @@ public class ElfFile {
         }
     }
 
+    private static FileChannel openOutput(String outputName) throws IOException {
+        return FileChannel.open(Paths.get(outputName),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Cache used to decode and render repeated instruction words once; null (the default) decodes and
+     * renders every one.
+     */
+    public void setDecodeCache(DecodeCache decodeCache) {
+        this.decodeCache = decodeCache;
+    }
+
+    /**
+     * Whether the full listing marks basic blocks, see {@link ControlFlowGraph#writeBlock}; off by default.
+     */
+    public void setShowBlocks(boolean showBlocks) {
+        this.showBlocks = showBlocks;
+    }
+
+    /**
+     * Records the time, allocation and size of every phase into {@code stats}; null (the default) records nothing.
+     */
+    public void setStats(RunStats stats) {
+        this.stats = stats;
+    }
+
+    private RunStats.Phase begin(String name) {
+        return stats == null ? null : stats.begin(name);
+    }
+
+    private static void end(RunStats.Phase phase, long instructions, long bytes) {
+        if (phase != null) {
+            phase.end(instructions, bytes);
+        }
+    }
+
+    // counters that are final once a listing has been written
+    private void countWritten(long outputBytes) {
+        if (stats != null) {
+            stats.count("inputBytes", bytesRead);
+            stats.count("sections", sections.size());
+            stats.count("codeSections", code.size());
+            stats.count("symbols", symtab.size());
+            stats.count("labels", labels.size());
+            stats.count("instructions", textWords());
+            stats.count("outputBytes", outputBytes);
+        }
+    }
+
     public void write(String outputName) {
+        ElfEvents.Write writeEvent = new ElfEvents.Write();
+        writeEvent.begin();
+        long size;
+        try (ListingWriter writer = new ListingWriter(openOutput(outputName))) {
+            writer.setCache(decodeCache);
+            RunStats.Phase phase = begin("write");
+            writeText(writer);
+            symtab.write(writer);
+            end(phase, textWords(), writer.getBytesWritten());
+            countWritten(writer.getBytesWritten());
+            size = writer.getBytesWritten();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open output file: " + e.getMessage());
+        }
+        ElfEvents.written(writeEvent, outputName, "full", size);
+    }
+
+    /**
+     * The bytes {@link #write(String)} would write, rendered in memory; needs {@link #parse()}.
+     */
+    byte[] listing() {
+        ListingWriter writer = new ListingWriter();
+        writer.setCache(decodeCache);
         try {
-            BufferedWriter writer = new BufferedWriter(
-                    new OutputStreamWriter(new FileOutputStream(outputName), "utf8"));
             writeText(writer);
             symtab.write(writer);
-            writer.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toByteArray();
+    }
 
+    /**
+     * Writes the parsed instructions, their labels, the symbols and the code sections as a binary
+     * listing (see {@link BinaryListing}) that tools can map and read without parsing text.
+     */
+    public void writeBinary(String outputName) {
+        ElfEvents.Write writeEvent = new ElfEvents.Write();
+        writeEvent.begin();
+        long size;
+        try (FileChannel channel = openOutput(outputName)) {
+            RunStats.Phase phase = begin("writeBinary");
+            new BinaryListingWriter(channel).write(text, code, labels, symtab);
+            size = channel.size();
+            end(phase, textWords(), size);
+            countWritten(size);
         } catch (IOException e) {
             throw new IllegalArgumentException("Could not open output file: " + e.getMessage());
         }
+        ElfEvents.written(writeEvent, outputName, "binary", size);
     }
 
-    public void parse() {
+    /**
+     * Parses and writes the listing in one pipelined pass: a decoder thread fills batches of
+     * {@value #BATCH_WORDS} instructions and hands them through a bounded queue to the calling
+     * thread, which renders and writes them. Only labels are collected up front, so memory
+     * does not grow with the size of .text, and nothing is kept for {@link #getInstruction(int)}.
+     */
+    public void parseAndWrite(String outputName) {
+        parseHeaders();
+        RunStats.Phase labelPhase = begin("labelText");
+        labelText();
+        end(labelPhase, textWords(), textBytes());
+
+        BlockingQueue<InstructionStore> full = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        BlockingQueue<InstructionStore> free = new ArrayBlockingQueue<>(PIPELINE_DEPTH + 1);
+        for (int i = 0; i <= PIPELINE_DEPTH; i++) {
+            free.add(new InstructionStore(BATCH_WORDS));
+        }
+        Throwable[] failure = new Throwable[1];
+        Thread decoder = new Thread(() -> {
+            try {
+                for (CodeSection section : code) {
+                    for (int from = 0; from < section.count; from += BATCH_WORDS) {
+                        InstructionStore batch = free.take();
+                        batch.clear();
+                        decodeInto(batch, section, from, Math.min(section.count, from + BATCH_WORDS));
+                        full.put(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+            try {
+                full.put(END_OF_TEXT);
+            } catch (InterruptedException ignored) {
+            }
+        }, "elf-decoder");
+        decoder.setDaemon(true);
+        decoder.start();
+
+        ElfEvents.Write writeEvent = new ElfEvents.Write();
+        writeEvent.begin();
+        long size;
+        try (ListingWriter writer = new ListingWriter(openOutput(outputName))) {
+            writer.setCache(decodeCache);
+            RunStats.Phase phase = begin("decode+write");
+            // the consumer knows how many batches each section takes, so batches carry no section
+            InstructionStore batch = null;
+            sections:
+            for (int i = 0; i < code.size(); i++) {
+                writeSectionName(writer, i);
+                for (int from = 0; from < code.get(i).count; from += BATCH_WORDS) {
+                    batch = full.take();
+                    if (batch == END_OF_TEXT) {
+                        break sections;
+                    }
+                    writeText(writer, batch, i);
+                    free.put(batch);
+                }
+            }
+            if (batch != END_OF_TEXT) {
+                full.take();
+            }
+            if (failure[0] instanceof RuntimeException) {
+                throw (RuntimeException) failure[0];
+            } else if (failure[0] != null) {
+                throw new IllegalStateException(failure[0]);
+            }
+            symtab.write(writer);
+            end(phase, textWords(), writer.getBytesWritten());
+            countWritten(writer.getBytesWritten());
+            size = writer.getBytesWritten();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open output file: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing " + outputName);
+        } finally {
+            decoder.interrupt();
+        }
+        ElfEvents.written(writeEvent, outputName, "stream", size);
+    }
+
+    /**
+     * Decodes the executable sections on the given pool in chunks of {@value #CHUNK_WORDS} words, all
+     * sections at once; null (the default) decodes sequentially. Labels are the same either way.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Parses the ELF header, the section headers and the symbol table, and labels function
+     * entries; code is left alone. Called by every other entry point, does nothing the second time.
+     */
+    public synchronized void parseHeaders() {
+        if (labels != null) {
+            return;
+        }
+        RunStats.Phase phase = begin("parseHeader");
         parseHeader();
+        end(phase, 0, 0x34);
+        phase = begin("parseSectionHeader");
         parseSectionHeader();
+        end(phase, 0, sections.size() * 0x28L);
+        phase = begin("parseSymtab");
         parseSymtab();
-        labels = symtab.toLabels();
-        parseText();
+        end(phase, 0, symtabSize);
+        phase = begin("toLabels");
+        labels = symtab.toLabels(codeMap);
+        end(phase, 0, 0);
     }
 
-    private String getBytesString(int start, int length) {
-        StringBuilder str = new StringBuilder();
-        for (int i = start; i < bytesRead && i < start + length; i++) {
-            str.append((char) bytes.get(i));
+    /**
+     * {@link #parseHeaders()}, then gives out L&lt;n&gt; names for every jal/branch target as {@link #parse()}
+     * would, decoding nothing else, so that {@link #disassemble(String)} shows them. After it, parsing
+     * adds no labels. Does nothing the second time.
+     */
+    synchronized void labelCode() {
+        parseHeaders();
+        if (!codeLabelled) {
+            labelText();
+            codeLabelled = true;
         }
-        return str.toString();
     }
 
-    private int getInstruction(int index) {
+    /**
+     * Address to containing symbol index over .symtab, built on first use.
+     */
+    public synchronized SymbolIndex getSymbolIndex() {
+        parseHeaders();
+        if (symbolIndex == null) {
+            symbolIndex = symtab.toIndex();
+        }
+        return symbolIndex;
+    }
+
+    /**
+     * Basic blocks, edges and per-function block ranges of the executable sections, built on
+     * first use straight from the image, see {@link ControlFlowGraph}.
+     */
+    public synchronized ControlFlowGraph getControlFlowGraph() {
+        parseHeaders();
+        if (controlFlowGraph == null) {
+            RunStats.Phase phase = begin("controlFlowGraph");
+            controlFlowGraph = ControlFlowGraph.build(this);
+            end(phase, textWords(), textBytes());
+        }
+        return controlFlowGraph;
+    }
+
+    /**
+     * Calls, jumps and branches between addresses and functions, built on first use straight from
+     * the image, see {@link CrossReferences}.
+     */
+    public synchronized CrossReferences getCrossReferences() {
+        parseHeaders();
+        if (crossReferences == null) {
+            RunStats.Phase phase = begin("crossReferences");
+            crossReferences = CrossReferences.build(this);
+            end(phase, textWords(), textBytes());
+        }
+        return crossReferences;
+    }
+
+    /**
+     * {@code name+0xoffset} of the symbol containing the address, or null; see {@link SymbolIndex}.
+     */
+    public String symbolize(int addr) {
+        return getSymbolIndex().symbolize(addr);
+    }
+
+    public void parse() {
+        parseHeaders();
+        RunStats.Phase phase = begin("parseText");
+        if (pool == null) {
+            parseText();
+        } else {
+            parseTextParallel();
+        }
+        end(phase, textWords(), textBytes());
+    }
+
+    /**
+     * Decodes every executable section straight from the image and pushes each instruction to
+     * the visitor; nothing is kept, and neither {@link #parse()} nor labels are needed.
+     */
+    public void decode(InstructionVisitor visitor) {
+        parseHeaders();
+        RunStats.Phase phase = begin("decode");
+        for (CodeSection section : code) {
+            visitor.section(section.name, section.addr, section.count);
+            for (int from = 0; from < section.count; from += CHUNK_WORDS) {
+                int to = Math.min(section.count, from + CHUNK_WORDS);
+                ElfEvents.Decode event = new ElfEvents.Decode();
+                event.begin();
+                for (int index = from; index < to; index++) {
+                    int x = word(section, index);
+                    int addr = section.addrOf(index);
+                    long decoded = Decoder.decode(x, section.compressed);
+                    int imm = Decoder.imm(decoded);
+                    visitor.instruction(addr, x, Decoder.length(decoded), Decoder.mnemonic(decoded),
+                            Decoder.rd(decoded), Decoder.rs1(decoded), Decoder.rs2(decoded), imm,
+                            Decoder.hasTarget(decoded) ? addr + imm : -1);
+                }
+                ElfEvents.decoded(event, section, from, to);
+            }
+        }
+        end(phase, textWords(), textBytes());
+    }
+
+    private int readWord(int index) {
         return bytes.getInt(index);
     }
 
+    /**
+     * The instruction at the index of the section: a 32-bit word, or the halfword of a 16-bit one.
+     */
+    int word(CodeSection section, int index) {
+        int at = section.offsetOf(index);
+        if (section.compressed) {
+            int half = bytes.getShort(at) & 0xffff;
+            if (Decoder.isCompressed(half)) {
+                return half;
+            }
+        }
+        return readWord(at);
+    }
+
+    /**
+     * The section header table; parses headers first if needed.
+     */
+    public SectionTable getSections() {
+        parseHeaders();
+        return sections;
+    }
+
+    public int getInstructionCount() {
+        return text.size();
+    }
+
+    public Instruction getInstruction(int index) {
+        return new Instruction(text.getAddr(index), text.getWord(index), text.getDecoded(index), labels,
+                codeMap.sectionOfIndex(index));
+    }
+
+    /**
+     * Sequential stream of the instructions of every executable section, decoded from the image as
+     * they are consumed, so it needs no {@link #parse()} and works as well with {@code .parallel()}.
+     * Only headers are parsed on the first call; targets show L&lt;n&gt; labels only after {@link #parse()}.
+     */
+    public Stream<Instruction> instructions() {
+        parseHeaders();
+        return StreamSupport.stream(new InstructionSpliterator(this, code, 0, textWords()), false);
+    }
+
+    private static final String[] REGISTERS = {
+            "zero", "ra", "sp", "gp", "tp", "t0", "t1", "t2",
+            "s0", "s1", "a0", "a1", "a2", "a3", "a4", "a5",
+            "a6", "a7", "s2", "s3", "s4", "s5", "s6", "s7",
+            "s8", "s9", "s10", "s11", "t3", "t4", "t5", "t6"
+    };
+
     public static String rToString(int d) {
-        switch (d) {
-            case 0:
-                return "zero";
-            case 1:
-                return "ra";
-            case 2:
-                return "sp";
-            case 3:
-                return "gp";
-            case 4:
-                return "tp";
-            case 5, 6, 7:
-                return "t" + Integer.toString(d - 5);
-            case 8, 9:
-                return "s" + Integer.toString(d - 8);
-            case 10, 11, 12, 13, 14, 15, 16, 17:
-                return "a" + Integer.toString(d - 10);
-            case 18, 19, 20, 21, 22, 23, 24, 25, 26, 27:
-                return "s" + Integer.toString(d - 16);
-            case 28, 29, 30, 31:
-                return "t" + Integer.toString(d - 25);
-        }
-        ElfError("Unknown register x" + d);
-        return null;
-    }
-
-    private String offsetToString(int addr, int offset) {
+        if (d < 0 || d >= REGISTERS.length) {
+            ElfError("Unknown register x" + d);
+        }
+        return REGISTERS[d];
+    }
+
+    /**
+     * Names the target of a jump or branch in the code section {@code section}, under the section that holds it.
+     */
+    private void labelTarget(int section, int addr, int offset) {
         addr += offset;
-        if (labels.checkLabel(addr)) {
-            return String.format("0x%s <%s>", Integer.toHexString(addr), labels.getLabel(addr));
+        section = labels.sectionAt(section, addr);
+        if (!labels.checkLabel(section, addr)) {
+            labels.add(section, addr, "L" + unknownAddr++);
         }
-        String name = String.format("L%d", unknownAddr++);
-        labels.add(addr, name);
-        return String.format("0x%s <%s>", Integer.toHexString(addr), name);
     }
 
     public static int getOpcode(int instr) {
@@ -206,460 +592,357 @@ public class ElfFile {
         return x;
     }
 
-    private void parseSectionHeader() {
-        for (int i = e_shoff; i + 0x24 < bytesRead; i += 0x28) {
-            int index = (i - e_shoff) / 0x28;
-            if (index == e_shstrndx && bytes.getInt(i + 0x04) == SHT_STRTAB) {
-                namesOffset = bytes.getInt(i + 0x10);
-                break;
+    void parseSectionHeader() {
+        ElfEvents.SectionParse event = new ElfEvents.SectionParse();
+        event.begin();
+        int namesIndex = e_shstrndx & 0xffff;
+        sections = new SectionTable(bytes, bytesRead, e_shoff, e_shnum & 0xffff, namesIndex);
+        if (namesIndex >= sections.size() || sections.getType(namesIndex) != SHT_STRTAB) {
+            ElfError("Section names not found");
+        }
+        int symtabIndex = sections.findByType(SHT_SYMTAB);
+        if (symtabIndex == -1) {
+            ElfError("Section .symtab not found");
+        }
+        symtabOffset = sections.getOffset(symtabIndex);
+        symtabSize = sections.getSize(symtabIndex);
+        int strtabIndex = sections.getLink(symtabIndex);
+        if (strtabIndex <= 0 || strtabIndex >= sections.size() || sections.getType(strtabIndex) != SHT_STRTAB) {
+            strtabIndex = sections.find(".strtab");
+        }
+        if (strtabIndex == -1 || sections.getType(strtabIndex) != SHT_STRTAB) {
+            ElfError("Section .strtab not found");
+        }
+        strtabOffset = sections.getOffset(strtabIndex);
+
+        code.clear();
+        int first = 0;
+        for (int i = 0; i < sections.size(); i++) {
+            if (sections.isExecutable(i)) {
+                first += addCodeSection(i, first);
             }
         }
-        if (namesOffset == -1) {
-            ElfError("Section names not found");
+        if (code.isEmpty()) {
+            int textIndex = sections.find(".text");
+            if (textIndex == -1) {
+                code.add(new CodeSection(".text", -1, 0, bytes, 0, 0, false, 0));
+            } else {
+                addCodeSection(textIndex, 0);
+            }
+        }
+        codeMap = new CodeMap(code, sections.size());
+        event.end();
+        if (event.shouldCommit()) {
+            event.sections = sections.size();
+            event.codeSections = code.size();
+            event.commit();
         }
-        for (int i = e_shoff; i + 0x24 < bytesRead; i += 0x28) {
-            // .text -- 5 bytes
-            // .symtab -- 7 bytes
-            int sh_name = bytes.getInt(i);
-            String textName = getBytesString(namesOffset + sh_name, 5);
-            if (textName.equals(".text")) {
-                textAddr = bytes.getInt(i + 0x0c);
-                textOffset = bytes.getInt(i + 0x10);
-                textSize = bytes.getInt(i + 0x14);
+    }
+
+    private int addCodeSection(int index, int first) {
+        int offset = sections.getOffset(index);
+        int size = (int) Math.min(sections.getSize(index), (long) bytesRead - offset);
+        CodeSection section = new CodeSection(sections.getName(index), index, sections.getAddr(index), bytes, offset, size,
+                (e_flags & EF_RISCV_RVC) != 0, first);
+        code.add(section);
+        return section.count;
+    }
+
+    /**
+     * Decoded form of the word, through the decode cache if there is one. Only for the calling thread:
+     * parallel chunks and the --stream decoder thread use {@link Decoder} directly.
+     */
+    private long decodeWord(int x, boolean compressed) {
+        return decodeCache == null ? Decoder.decode(x, compressed) : decodeCache.decode(x, compressed);
+    }
+
+    void parseText() {
+        text = new InstructionStore(textWords());
+        for (int s = 0; s < code.size(); s++) {
+            CodeSection section = code.get(s);
+            // chunked only so that every chunk is reported like a parallel one
+            for (int from = 0; from < section.count; from += CHUNK_WORDS) {
+                int to = Math.min(section.count, from + CHUNK_WORDS);
+                ElfEvents.Decode event = new ElfEvents.Decode();
+                event.begin();
+                for (int index = from; index < to; index++) {
+                    int x = word(section, index);
+                    int addr = section.addrOf(index);
+                    text.add(addr, x, decodeWord(x, section.compressed));
+                    if (Decoder.isPcRelative(x, section.compressed)) {
+                        labelTarget(s, addr, Decoder.targetOffset(x, section.compressed));
+                    }
+                }
+                ElfEvents.decoded(event, section, from, to);
             }
-            String symtabName = getBytesString(namesOffset + sh_name, 7);
-            if (symtabName.equals(".symtab") &&
-                    bytes.getInt(i + 0x04) == SHT_SYMTAB) {
-                symtabOffset = bytes.getInt(i + 0x10);
-                symtabSize = bytes.getInt(i + 0x14);
+        }
+    }
+
+    /**
+     * Writes the same listing as {@link #write(String)}, but takes every function (a FUNC symbol
+     * with a size inside an executable section) from the cache if a fragment for its content hash
+     * exists, and only decodes and renders the others. The hash covers the function's address, its bytes, the labels
+     * inside it and the labels of its targets, so a fragment is reused only if it would render
+     * identically. Labels are given out in a pre-pass as in {@link #parseAndWrite(String)}.
+     */
+    public void writeIncremental(String outputName, ListingCache cache) {
+        parseHeaders();
+        RunStats.Phase labelPhase = begin("labelText");
+        labelText();
+        end(labelPhase, textWords(), textBytes());
+        List<SymbolTable.Symbol> functions = symtab.functions();
+        ElfEvents.Write writeEvent = new ElfEvents.Write();
+        writeEvent.begin();
+        long size;
+        try (ListingWriter writer = new ListingWriter(openOutput(outputName))) {
+            writer.setCache(decodeCache);
+            RunStats.Phase phase = begin("writeIncremental");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < code.size(); i++) {
+                CodeSection section = code.get(i);
+                writeSectionName(writer, i);
+                int index = 0;
+                for (SymbolTable.Symbol function : functions) {
+                    long offset = (function.getValue() & 0xffffffffL) - (section.addr & 0xffffffffL);
+                    if (function.getSize() <= 0 || offset < section.startOf(index) || offset >= section.end()) {
+                        continue;
+                    }
+                    int from = section.indexAt(offset);
+                    if (section.startOf(from) != offset) {
+                        continue;
+                    }
+                    int to = section.indexAt(offset + (function.getSize() & 0xffffffffL));
+                    writeRange(writer, i, index, from);
+                    String key = functionKey(digest, i, from, to);
+                    byte[] fragment = cache.get(key);
+                    if (fragment == null) {
+                        ElfEvents.Decode event = new ElfEvents.Decode();
+                        event.begin();
+                        ListingWriter part = new ListingWriter();
+                        part.setCache(decodeCache);
+                        writeRange(part, i, from, to);
+                        fragment = part.toByteArray();
+                        ElfEvents.decoded(event, section, from, to);
+                        cache.put(key, fragment);
+                    }
+                    writer.write(fragment);
+                    index = to;
+                }
+                writeRange(writer, i, index, section.count);
             }
+            symtab.write(writer);
+            end(phase, textWords(), writer.getBytesWritten());
+            countWritten(writer.getBytesWritten());
+            size = writer.getBytesWritten();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open output file: " + e.getMessage());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ElfEvents.written(writeEvent, outputName, "incremental", size);
+    }
 
-            String strtabName = getBytesString(namesOffset + sh_name, 7);
-            if (symtabName.equals(".strtab") &&
-                    bytes.getInt(i + 0x04) == SHT_STRTAB) {
-                strtabOffset = bytes.getInt(i + 0x10);
+    private String functionKey(MessageDigest digest, int s, int from, int to) {
+        CodeSection section = code.get(s);
+        digest.reset();
+        ByteBuffer header = ByteBuffer.allocate(13).putInt(LISTING_CACHE_VERSION).putInt(section.addrOf(from))
+                .putInt(to - from).put((byte) (section.compressed ? 1 : 0));
+        digest.update(header.flip());
+        ByteBuffer image = bytes.duplicate();
+        image.limit(Math.min(bytesRead, section.offsetOf(to))).position(section.offsetOf(from));
+        digest.update(image);
+        for (int index = from; index < to; index++) {
+            int addr = section.addrOf(index);
+            String label = labels.getLabel(s, addr);
+            if (label != null) {
+                digest.update((byte) 'L');
+                digest.update(label.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            int x = word(section, index);
+            if (Decoder.isPcRelative(x, section.compressed)) {
+                digest.update((byte) 'T');
+                digest.update(labels.getTarget(s, addr + Decoder.targetOffset(x, section.compressed))
+                        .getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
             }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
+    private void writeRange(ListingWriter writer, int s, int from, int to) throws IOException {
+        CodeSection section = code.get(s);
+        for (int index = from; index < to; index++) {
+            int addr = section.addrOf(index);
+            int x = word(section, index);
+            int label = labels.find(s, addr);
+            if (label >= 0) {
+                writer.label(addr, labels, label);
+            }
+            writer.instruction(addr, x, decodeWord(x, section.compressed), labels, s);
         }
-        if (symtabOffset == -1) {
-            ElfError("Section .symtab not found");
+    }
+
+    /**
+     * Listing of the named symbol's bytes (value and size from .symtab, only in the section its
+     * {@code st_shndx} names if that is code), decoding nothing else. Only headers are parsed on the
+     * first call. Branch targets are shown with their label if it is known: function names always,
+     * L&lt;n&gt; names only after {@link #parse()}.
+     */
+    public String disassemble(String symbol) {
+        parseHeaders();
+        SymbolTable.Symbol found = symtab.find(symbol);
+        if (found == null) {
+            throw new IllegalArgumentException("Symbol not found: " + symbol);
         }
-        if (symtabOffset == -1) {
-            ElfError("Section .text not found");
+        long from = found.getValue() & 0xffffffffL;
+        long to = from + Math.max(found.getSize() & 0xffffffffL, 1);
+        return disassemble(codeMap.sectionOf(found.getIndex(), found.getValue()), from, to);
+    }
+
+    /**
+     * Listing of the instructions of the executable sections that start in [from, to), see
+     * {@link #disassemble(String)}.
+     */
+    public String disassemble(int from, int to) {
+        parseHeaders();
+        return disassemble(-1, from & 0xffffffffL, to & 0xffffffffL);
+    }
+
+    // instructions of the code section (of every one for -1) that start in [from, to), addresses unsigned;
+    // to may be 2^32 for a symbol that runs to the end of the address space
+    private String disassemble(int only, long from, long to) {
+        ListingWriter writer = new ListingWriter();
+        try {
+            for (int i = 0; i < code.size(); i++) {
+                if (only >= 0 && i != only) {
+                    continue;
+                }
+                CodeSection section = code.get(i);
+                long start = Math.max(0, from - (section.addr & 0xffffffffL));
+                long end = Math.min(section.end(), to - (section.addr & 0xffffffffL));
+                if (start < end) {
+                    writeRange(writer, i, section.indexAt(start), section.indexAt(end));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
-        if (strtabOffset == -1) {
-            ElfError("Section .strtab not found");
+        return writer.toString();
+    }
+
+    /**
+     * Gives out L&lt;n&gt; names for every jal/branch target in code without decoding anything else.
+     */
+    private void labelText() {
+        for (int s = 0; s < code.size(); s++) {
+            CodeSection section = code.get(s);
+            for (int index = 0; index < section.count; index++) {
+                int x = word(section, index);
+                if (Decoder.isPcRelative(x, section.compressed)) {
+                    labelTarget(s, section.addrOf(index), Decoder.targetOffset(x, section.compressed));
+                }
+            }
         }
     }
 
-    private void parseText() {
-        for (int i = 0; i < textSize && textOffset + i < bytesRead; i += 4) {
-            int x = getInstruction(textOffset + i);
-            int addr = textAddr + i;
-            int opcode = getOpcode(x);
-            int func3 = getBits(x, 14, 12);
-            int func7 = getBits(x, 31, 25);
-            int offset;
-            String name = null;
-            String arg1 = null;
-            String arg2 = null;
-            String arg3 = null;
-            switch (opcode) {
-                case (0b0110111):
-                    name = "lui";
-                    arg1 = rToString(getBits(x, 11, 7));
-                    arg2 = Integer.toString(getBits(x, 31, 12));
-                    break;
-                case (0b0010111):
-                    name = "auipc";
-                    arg1 = rToString(getBits(x, 11, 7));
-                    arg2 = Integer.toString(getBits(x, 31, 12));
-                    break;
-                case (0b0010011):
-                    arg1 = rToString(getBits(x, 11, 7));
-                    arg2 = rToString(getBits(x, 19, 15));
-                    switch (func3) {
-                        case (0b000):
-                            arg3 = Integer.toString(to12Bits(getBits(x, 31, 20)));
-                            name = "addi";
-                            break;
-                        case (0b010):
-                            arg3 = Integer.toString(to12Bits(getBits(x, 31, 20)));
-                            name = "slti";
-                            break;
-                        case (0b011):
-                            arg3 = Integer.toString(getBits(x, 31, 20));
-                            name = "sltiu";
-                            break;
-                        case (0b100):
-                            arg3 = Integer.toString(to12Bits(getBits(x, 31, 20)));
-                            name = "xori";
-                            break;
-                        case (0b110):
-                            arg3 = Integer.toString(to12Bits(getBits(x, 31, 20)));
-                            name = "ori";
-                            break;
-                        case (0b111):
-                            arg3 = Integer.toString(to12Bits(getBits(x, 31, 20)));
-                            name = "andi";
-                            break;
-                        case (0b001):
-                            arg3 = Integer.toString(getBits(x, 24, 20));
-                            name = "slli";
-                            break;
-                        case (0b101):
-                            switch (func7 | 1) {
-                                case (0b0000001):
-                                    arg3 = Integer.toString(getBits(x, 24, 20));
-                                    name = "srli";
-                                    break;
-                                case (0b0100001):
-                                    arg3 = Integer.toString(getBits(x, 24, 20));
-                                    name = "srai";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        default:
-                            name = "unknown_instruction";
-                            arg1 = null;
-                            arg2 = null;
-                            arg3 = null;
+    private void decodeInto(InstructionStore store, CodeSection section, int from, int to) {
+        ElfEvents.Decode event = new ElfEvents.Decode();
+        event.begin();
+        for (int index = from; index < to; index++) {
+            int x = word(section, index);
+            store.add(section.addrOf(index), x, Decoder.decode(x, section.compressed));
+        }
+        ElfEvents.decoded(event, section, from, to);
+    }
 
+    /**
+     * Number of instructions in all executable sections.
+     */
+    int textWords() {
+        int words = 0;
+        for (CodeSection section : code) {
+            words += section.count;
+        }
+        return words;
+    }
+
+    private long textBytes() {
+        long bytes = 0;
+        for (CodeSection section : code) {
+            bytes += section.end();
+        }
+        return bytes;
+    }
+
+    /**
+     * Decodes one chunk into its slots of {@link #text} and collects its jal/branch targets in order,
+     * so that L&lt;n&gt; names can be given out afterwards exactly as the sequential pass does.
+     */
+    private static final class DecodeChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ElfFile elf;
+        private final int sectionIndex;
+        private final CodeSection section;
+        private final int from;
+        private final int to;
+        private int[] targets = new int[64];
+        private int targetCount;
+
+        DecodeChunk(ElfFile elf, int sectionIndex, int from, int to) {
+            this.elf = elf;
+            this.sectionIndex = sectionIndex;
+            this.section = elf.code.get(sectionIndex);
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            ElfEvents.Decode event = new ElfEvents.Decode();
+            event.begin();
+            for (int index = from; index < to; index++) {
+                int x = elf.word(section, index);
+                int addr = section.addrOf(index);
+                elf.text.set(section.first + index, addr, x, Decoder.decode(x, section.compressed));
+                if (Decoder.isPcRelative(x, section.compressed)) {
+                    if (targetCount == targets.length) {
+                        targets = Arrays.copyOf(targets, targetCount * 2);
                     }
-                    break;
-
-                case (0b0110011):
-                    arg1 = rToString(getBits(x, 11, 7));
-                    arg2 = rToString(getBits(x, 19, 15));
-                    arg3 = rToString(getBits(x, 24, 20));
-                    switch (func3) {
-                        case (0b000):
-                            switch (func7) {
-                                case (0):
-                                    name = "add";
-                                    break;
-                                case (0b0100000):
-                                    name = "sub";
-                                    break;
-                                case (0b0000001):
-                                    name = "mul";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        case (0b001):
-                            switch (func7) {
-                                case (0):
-                                    name = "sll";
-                                    break;
-                                case (0b0000001):
-                                    name = "mulh";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        case (0b010):
-                            switch (func7) {
-                                case (0):
-                                    name = "slt";
-                                    break;
-                                case (0b0000001):
-                                    name = "mulhsu";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        case (0b011):
-                            switch (func7) {
-                                case (0):
-                                    name = "sltu";
-                                    break;
-                                case (0b0000001):
-                                    name = "mulhu";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        case (0b100):
-                            switch (func7) {
-                                case (0):
-                                    name = "xor";
-                                    break;
-                                case (0b0000001):
-                                    name = "div";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        case (0b101):
-                            switch (func7) {
-                                case (0):
-                                    name = "srl";
-                                    break;
-                                case (0b0100000):
-                                    name = "sra";
-                                    break;
-                                case (0b0000001):
-                                    name = "divu";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        case (0b110):
-                            switch (func7) {
-                                case (0):
-                                    name = "or";
-                                    break;
-                                case (0b0000001):
-                                    name = "rem";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        case (0b111):
-                            switch (func7) {
-                                case (0):
-                                    name = "and";
-                                    break;
-                                case (0b0000001):
-                                    name = "remu";
-                                    break;
-                                default:
-                                    name = "unknown_instruction";
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                            }
-                            break;
-                        default:
-                            name = "unknown_instruction";
-                            arg1 = null;
-                            arg2 = null;
-                            arg3 = null;
-                    }
-                    break;
-                case (0b0001111):
-                    name = "fence";
-                    arg1 = null;
-                    arg2 = null;
-                    arg3 = null;
-                    break;
-                case (0b1110011):
-                    arg1 = rToString(getBits(x, 11, 7));
-                    switch (func3) {
-                        case (0b000):
-                            switch (getBits(x, 31, 7)) {
-                                case (0):
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                                    name = "ecall";
-                                    break;
-                                case (0b10000000000000):
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                                    name = "ebreak";
-                                    break;
-                                case (0b100000000000000):
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                                    name = "uret";
-                                    break;
-                                case (0b0001000000100000000000000):
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                                    name = "sret";
-                                    break;
-                                case (0b0011000000100000000000000):
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                                    name = "mret";
-                                    break;
-                                case (0b0001000001010000000000000):
-                                    arg1 = null;
-                                    arg2 = null;
-                                    arg3 = null;
-                                    name = "wfi";
-                                    break;
-                                default:
-                                    if (func7 == 0b0001001) {
-                                        arg1 = null;
-                                        arg2 = null;
-                                        arg3 = null;
-                                        name = "sfence.vma";
-                                    } else {
-                                        name = "unknown_instruction";
-                                        arg1 = null;
-                                        arg2 = null;
-                                        arg3 = null;
-                                    }
-                            }
-                            break;
-                        default:
-                            name = "unknown_instruction";
-                            arg1 = null;
-                            arg2 = null;
-                            arg3 = null;
-                    }
-                    break;
-
-                case (0b0000011):
-                    arg1 = rToString(getBits(x, 11, 7));
-                    arg2 = Integer.toString(getBits(x, 31, 20));
-                    arg3 = rToString(getBits(x, 19, 15));
-                    switch (func3) {
-                        case 0b000:
-                            name = "lb";
-                            break;
-                        case 0b001:
-                            name = "lh";
-                            break;
-                        case 0b010:
-                            name = "lw";
-                            break;
-                        case 0b100:
-                            name = "lbu";
-                            break;
-                        case 0b101:
-                            name = "lhu";
-                            break;
-
-                        default:
-                            name = "unknown_instruction";
-                            arg1 = null;
-                            arg2 = null;
-                            arg3 = null;
-                    }
-                    break;
-
-                case (0b0100011):
-                    offset = getBits(x, 11, 7) | (getBits(x, 31, 25) << 5);
-                    arg1 = rToString(getBits(x, 24, 20));
-                    arg2 = Integer.toString(offset);
-                    arg3 = rToString(getBits(x, 19, 15));
-                    switch (func3) {
-                        case 0b000:
-                            name = "sb";
-                            break;
-                        case 0b001:
-                            name = "sh";
-                            break;
-                        case 0b010:
-                            name = "sw";
-                            break;
-
-                        default:
-                            name = "unknown_instruction";
-                            arg1 = null;
-                            arg2 = null;
-                            arg3 = null;
-                    }
-                    break;
-
-                case (0b1101111):
-                    offset = (getBits(x, 31, 31) << 20) | (getBits(x, 30, 21) << 1)
-                            | (getBits(x, 20, 20) << 11) | (getBits(x, 19, 12) << 12);
-                    arg1 = rToString(getBits(x, 11, 7));
-                    arg2 = offsetToString(addr, to20Bits(offset));
-                    name = "jal";
-                    break;
-                case (0b1100111):
-                    if (func3 != 0) {
-                        name = "unknown_instruction";
-                        arg1 = null;
-                        arg2 = null;
-                        arg3 = null;
-                        break;
-                    }
-                    arg1 = null;
-                    arg2 = null;
-                    arg3 = null;
-                    arg1 = rToString(getBits(x, 11, 7));
-                    arg2 = Integer.toString(getBits(x, 31, 20));
-                    arg3 = rToString(getBits(x, 19, 15));
-                    name = "jalr";
-                    break;
-                case (0b1100011):
-                    offset = (getBits(x, 31, 31) << 12) | (getBits(x, 30, 25) << 5) |
-                            (getBits(x, 11, 8) << 1) | (getBits(x, 7, 7) << 11);
-                    arg1 = rToString(getBits(x, 19, 15));
-                    arg2 = rToString(getBits(x, 24, 20));
-                    arg3 = offsetToString(addr, to12Bits(offset));
-                    switch (func3) {
-                        case 0b000:
-                            name = "beq";
-                            break;
-                        case 0b001:
-                            name = "bne";
-                            break;
-                        case 0b100:
-                            name = "blt";
-                            break;
-                        case 0b101:
-                            name = "bge";
-                            break;
-                        case 0b110:
-                            name = "bltu";
-                            break;
-                        case 0b111:
-                            name = "bgeu";
-                            break;
-                        default:
-                            name = "unknown_instruction";
-                            arg1 = null;
-                            arg2 = null;
-                            arg3 = null;
-                    }
-                    break;
+                    targets[targetCount++] = addr + Decoder.targetOffset(x, section.compressed);
+                }
+            }
+            ElfEvents.decoded(event, section, from, to);
+        }
+    }
 
-                default:
-                    name = "unknown_instruction";
-                    arg1 = null;
-                    arg2 = null;
-                    arg3 = null;
+    private void parseTextParallel() {
+        int words = textWords();
+        text = new InstructionStore(words);
+        text.setSize(words);
+        // chunks never span sections, and chunks of every section run together
+        List<DecodeChunk> chunks = new ArrayList<>();
+        for (int s = 0; s < code.size(); s++) {
+            for (int from = 0; from < code.get(s).count; from += CHUNK_WORDS) {
+                chunks.add(new DecodeChunk(this, s, from, Math.min(code.get(s).count, from + CHUNK_WORDS)));
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(chunks);
+            }
+        });
+        for (DecodeChunk chunk : chunks) {
+            for (int i = 0; i < chunk.targetCount; i++) {
+                labelTarget(chunk.sectionIndex, chunk.targets[i], 0);
             }
-            text.add(new Instruction(addr, x, name, arg1, arg2, arg3));
         }
     }
 
-    private void parseSymtab() {
+    void parseSymtab() {
+        ElfEvents.SymtabParse event = new ElfEvents.SymtabParse();
+        event.begin();
         for (int i = symtabOffset, symbol = 0; i < symtabOffset + symtabSize; i += 0x10, symbol++) {
             int value = bytes.getInt(i + 4);
             int size = bytes.getInt(i + 8);
@@ -667,31 +950,57 @@ public class ElfFile {
             int bind = bytes.get(i + 12) / 0x10;
             int vis = bytes.get(i + 13);
             short index = bytes.getShort(i + 14);
-            String name = parseSymbolName(strtabOffset + bytes.getInt(i));
-            symtab.add(new SymbolTable.Symbol(symbol, value, size, type, bind, vis, index, name));
+            int name = strtabOffset + bytes.getInt(i);
+            symtab.add(new SymbolTable.Symbol(symbol, value, size, type, bind, vis, index, bytes, name));
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.symbols = symtab.size();
+            event.size = symtabSize;
+            event.commit();
         }
     }
 
-    private String parseSymbolName(int index) {
-        StringBuilder str = new StringBuilder();
-        for (int i = index; i < bytesRead && bytes.get(i) != 0; i++) {
-            str.append((char) bytes.get(i));
+    void writeText(ListingWriter writer) throws IOException {
+        ControlFlowGraph blocks = showBlocks ? getControlFlowGraph() : null;
+        for (int i = 0; i < code.size(); i++) {
+            CodeSection section = code.get(i);
+            writeSectionName(writer, i);
+            writeText(writer, text, section.first, section.first + section.count, i, blocks);
         }
-        return str.toString();
     }
 
-    private void writeText(BufferedWriter writer) throws IOException {
-        writer.write(".text\n");
-        for (Instruction i : text) {
-            if (labels.checkLabel(i.getAddr())) {
-                String addr = Integer.toHexString(i.getAddr());
-                if (addr.length() < 8) {
-                    addr = String.format("%0" + (8 - addr.length()) + "d%s", 0, addr);
-                }
-                String label = labels.getLabel(i.getAddr());
-                writer.write(String.format("%s   <%s>:\n", addr, label));
+    /**
+     * Name line of the i-th executable section; sections after the first are set off by an empty line.
+     */
+    private void writeSectionName(ListingWriter writer, int i) throws IOException {
+        if (i > 0) {
+            writer.write('\n');
+        }
+        writer.write(code.get(i).name);
+        writer.write('\n');
+    }
+
+    private void writeText(ListingWriter writer, InstructionStore text, int section) throws IOException {
+        writeText(writer, text, 0, text.size(), section, null);
+    }
+
+    /**
+     * Writes [from, to) of the store, all of it from the code section {@code section}; with {@code blocks},
+     * whose indices must be those of the store, a line before each block.
+     */
+    private void writeText(ListingWriter writer, InstructionStore text, int from, int to, int section,
+                           ControlFlowGraph blocks) throws IOException {
+        for (int index = from; index < to; index++) {
+            int addr = text.getAddr(index);
+            int label = labels.find(section, addr);
+            if (label >= 0) {
+                writer.label(addr, labels, label);
+            }
+            if (blocks != null && blocks.isLeader(index)) {
+                blocks.writeBlock(writer, blocks.blockAt(index));
             }
-            writer.write(i.toString());
+            writer.instruction(addr, text.getWord(index), text.getDecoded(index), labels, section);
         }
     }
 
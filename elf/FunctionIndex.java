@@ -0,0 +1,135 @@
+package elf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sized FUNC symbols keyed by code section and address, since in a relocatable object every
+ * section starts at address 0. A symbol belongs to the section its {@code st_shndx} names, see
+ * {@link CodeMap#sectionOf(short, int)}. As in {@link SymbolIndex}, functions are sorted by start
+ * with a max tree over their ends, so the innermost function containing an address (the latest
+ * start, then the smallest size) is found in O(log n) however functions nest or alias.
+ */
+final class FunctionIndex {
+    private final SymbolTable.Symbol[] symbols;
+    private final int[] sections;
+    // (section + 1) << 33 | address, so that keys of different sections never meet
+    private final long[] starts;
+    private final long[] ends;
+    // implicit binary tree over ends: node k covers its children 2k and 2k + 1, leaves start at leaves
+    private final long[] maxEnds;
+    private final int leaves;
+
+    FunctionIndex(List<SymbolTable.Symbol> functions, CodeMap code) {
+        List<SymbolTable.Symbol> sized = new ArrayList<>();
+        for (SymbolTable.Symbol function : functions) {
+            if (function.getSize() != 0) {
+                sized.add(function);
+            }
+        }
+        int n = sized.size();
+        long[] keys = new long[n];
+        int[] sectionOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            SymbolTable.Symbol function = sized.get(i);
+            sectionOf[i] = code.sectionOf(function.getIndex(), function.getValue());
+            keys[i] = key(sectionOf[i], function.getValue());
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys[a] != keys[b]
+                ? Long.compare(keys[a], keys[b])
+                : Integer.compareUnsigned(sized.get(b).getSize(), sized.get(a).getSize()));
+        symbols = new SymbolTable.Symbol[n];
+        sections = new int[n];
+        starts = new long[n];
+        ends = new long[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = sized.get(order[i]);
+            sections[i] = sectionOf[order[i]];
+            starts[i] = keys[order[i]];
+            ends[i] = starts[i] + (symbols[i].getSize() & 0xffffffffL);
+        }
+        leaves = Integer.highestOneBit(Math.max(n, 1) * 2 - 1);
+        maxEnds = new long[2 * leaves];
+        Arrays.fill(maxEnds, Long.MIN_VALUE);
+        System.arraycopy(ends, 0, maxEnds, leaves, n);
+        for (int k = leaves - 1; k > 0; k--) {
+            maxEnds[k] = Math.max(maxEnds[2 * k], maxEnds[2 * k + 1]);
+        }
+    }
+
+    private static long key(int section, int addr) {
+        return (long) (section + 1) << 33 | addr & 0xffffffffL;
+    }
+
+    int size() {
+        return symbols.length;
+    }
+
+    SymbolTable.Symbol getSymbol(int function) {
+        return symbols[function];
+    }
+
+    /**
+     * Code section of the function, -1 if it lies outside every section.
+     */
+    int getSection(int function) {
+        return sections[function];
+    }
+
+    /**
+     * Whether the function lies in the section and its bytes contain the address.
+     */
+    boolean contains(int function, int section, int addr) {
+        long at = key(section, addr);
+        return starts[function] <= at && at < ends[function];
+    }
+
+    /**
+     * Whether the function is the one {@link #find} gives for the address: it contains the address
+     * and no later function starts at or below it. Lets callers walking addresses in order check the
+     * function they are in, and the next one, without searching.
+     */
+    boolean isInnermost(int function, int section, int addr) {
+        return contains(function, section, addr)
+                && (function + 1 == starts.length || starts[function + 1] > key(section, addr));
+    }
+
+    /**
+     * The innermost function of the section whose bytes contain the address, or -1.
+     */
+    int find(int section, int addr) {
+        long at = key(section, addr);
+        int lo = 0;
+        int hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= at) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lastEndingAfter(1, 0, leaves, lo, at);
+    }
+
+    /**
+     * Greatest position below {@code limit} in the node's leaves {@code [from, to)} whose function ends
+     * after {@code at}, or -1; a node with no such leaf is skipped by its maximum.
+     */
+    private int lastEndingAfter(int node, int from, int to, int limit, long at) {
+        if (from >= limit || maxEnds[node] <= at) {
+            return -1;
+        }
+        if (to - from == 1) {
+            return from;
+        }
+        int mid = (from + to) >>> 1;
+        int right = lastEndingAfter(2 * node + 1, mid, to, limit, at);
+        return right >= 0 ? right : lastEndingAfter(2 * node, from, mid, limit, at);
+    }
+}
@@ -1,46 +1,77 @@
 package elf;
 
+import java.io.IOException;
+
 public class Instruction {
     private int addr;
     private int instr;
-    private String name;
-    private String arg1;
-    private String arg2;
-    private String arg3;
+    private long decoded;
+    private Labels labels;
+    // code section the instruction is in, -1 if not known
+    private int section;
+
+    public Instruction(int addr, int instr, long decoded, Labels labels) {
+        this(addr, instr, decoded, labels, -1);
+    }
 
-    public Instruction(int addr, int instr, String name, String arg1, String arg2, String arg3) {
+    Instruction(int addr, int instr, long decoded, Labels labels, int section) {
         this.addr = addr;
         this.instr = instr;
-        this.name = name;
-        this.arg1 = arg1;
-        this.arg2 = arg2;
-        this.arg3 = arg3;
+        this.decoded = decoded;
+        this.labels = labels;
+        this.section = section;
     }
 
     public int getAddr() {
         return addr;
     }
 
-    public String toString() {
+    public int getInstr() {
+        return instr;
+    }
 
-        String sAdr = Integer.toHexString(addr);
-        if (sAdr.length() < 5) {
-            sAdr = String.format("%0" + (5 - sAdr.length()) + "d%s", 0, sAdr);
-        }
-        String sInstr = Integer.toHexString(instr);
-        if (sInstr.length() < 8) {
-            sInstr = String.format("%0" + (8 - sInstr.length()) + "d%s", 0, sInstr);
-        }
-        switch (this.name) {
-            case "jalr", "lb", "lh", "lw", "lbu", "lhu", "sb", "sh", "sw":
-                return String.format("   %s:\t%s\t%7s\t%s, %s(%s)\n", sAdr, sInstr, name, arg1, arg2, arg3);
-        }
-        if (this.arg3 != null) {
-            return String.format("   %s:\t%s\t%7s\t%s, %s, %s\n", sAdr, sInstr, name, arg1, arg2, arg3);
-        }
-        if (this.arg2 != null) {
-            return String.format("   %s:\t%s\t%7s\t%s, %s\n", sAdr, sInstr, name, arg1, arg2);
+    public int getMnemonic() {
+        return Decoder.mnemonic(decoded);
+    }
+
+    public String getName() {
+        return Mnemonic.name(getMnemonic());
+    }
+
+    public int getRd() {
+        return Decoder.rd(decoded);
+    }
+
+    public int getRs1() {
+        return Decoder.rs1(decoded);
+    }
+
+    public int getRs2() {
+        return Decoder.rs2(decoded);
+    }
+
+    public int getImm() {
+        return Decoder.imm(decoded);
+    }
+
+    /**
+     * Length in bytes, 2 for a compressed instruction.
+     */
+    public int getLength() {
+        return Decoder.length(decoded);
+    }
+
+    public int getTarget() {
+        return addr + getImm();
+    }
+
+    public String toString() {
+        ListingWriter writer = new ListingWriter();
+        try {
+            writer.instruction(addr, instr, decoded, labels, section);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
-        return String.format("   %s:\t%s\t%7s\n", sAdr, sInstr, name);
+        return writer.toString();
     }
 }
@@ -0,0 +1,101 @@
+package elf;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the instructions of every executable section, by index in the order of
+ * {@link ElfFile#text}. Splits halve the index range, so they always fall on instruction
+ * boundaries (16-bit ones included) and their sizes are exact; instructions are decoded from
+ * the image only when they are consumed.
+ */
+final class InstructionSpliterator implements Spliterator<Instruction> {
+    // ranges smaller than this are not split, a task per few hundred instructions costs more than it saves
+    private static final int MIN_SPLIT = 1 << 10;
+
+    private final ElfFile elf;
+    private final List<CodeSection> code;
+    private int index;
+    private final int end;
+    // section holding index, moved forward as index passes section ends
+    private int section;
+
+    InstructionSpliterator(ElfFile elf, List<CodeSection> code, int from, int to) {
+        this.elf = elf;
+        this.code = code;
+        this.index = from;
+        this.end = to;
+        this.section = sectionOf(from);
+    }
+
+    private int sectionOf(int at) {
+        int lo = 0;
+        int hi = code.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (code.get(mid).first <= at) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private Instruction decode(CodeSection current, int at) {
+        int x = elf.word(current, at);
+        return new Instruction(current.addrOf(at), x, Decoder.decode(x, current.compressed), elf.labels, section);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Instruction> action) {
+        if (index >= end) {
+            return false;
+        }
+        CodeSection current = code.get(section);
+        while (index >= current.first + current.count) {
+            current = code.get(++section);
+        }
+        action.accept(decode(current, index - current.first));
+        index++;
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Instruction> action) {
+        while (index < end) {
+            CodeSection current = code.get(section);
+            int to = Math.min(end, current.first + current.count);
+            for (int at = index - current.first; at < to - current.first; at++) {
+                action.accept(decode(current, at));
+            }
+            index = to;
+            if (index < end) {
+                section++;
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<Instruction> trySplit() {
+        if (end - index < 2 * MIN_SPLIT) {
+            return null;
+        }
+        int mid = (index + end) >>> 1;
+        InstructionSpliterator prefix = new InstructionSpliterator(elf, code, index, mid);
+        index = mid;
+        section = sectionOf(mid);
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
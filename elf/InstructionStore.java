@@ -0,0 +1,77 @@
+package elf;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage for decoded instructions: address, raw word and the packed
+ * {@link Decoder} form live in parallel primitive arrays, 16 bytes per instruction.
+ */
+public final class InstructionStore {
+    private int[] addrs;
+    private int[] words;
+    private long[] decoded;
+    private int size;
+
+    public InstructionStore(int capacity) {
+        capacity = Math.max(capacity, 16);
+        addrs = new int[capacity];
+        words = new int[capacity];
+        decoded = new long[capacity];
+    }
+
+    public void add(int addr, int word, long decoded) {
+        if (size == addrs.length) {
+            grow();
+        }
+        this.addrs[size] = addr;
+        this.words[size] = word;
+        this.decoded[size] = decoded;
+        size++;
+    }
+
+    private void grow() {
+        grow(addrs.length + (addrs.length >> 1));
+    }
+
+    private void grow(int capacity) {
+        addrs = Arrays.copyOf(addrs, capacity);
+        words = Arrays.copyOf(words, capacity);
+        decoded = Arrays.copyOf(decoded, capacity);
+    }
+
+    /**
+     * Resizes the store so that slots below {@code size} can be filled with {@link #set}, e.g. by parallel workers.
+     */
+    void setSize(int size) {
+        if (size > addrs.length) {
+            grow(size);
+        }
+        this.size = size;
+    }
+
+    void set(int index, int addr, int word, long decoded) {
+        this.addrs[index] = addr;
+        this.words[index] = word;
+        this.decoded[index] = decoded;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getAddr(int index) {
+        return addrs[index];
+    }
+
+    public int getWord(int index) {
+        return words[index];
+    }
+
+    public long getDecoded(int index) {
+        return decoded[index];
+    }
+}
@@ -0,0 +1,22 @@
+package elf;
+
+/**
+ * Receives decoded instructions from {@link ElfFile#decode(InstructionVisitor)} as primitive
+ * fields, in address order within each executable section. Nothing is allocated per
+ * instruction, so a pass that keeps no objects itself runs at decoding speed.
+ */
+public interface InstructionVisitor {
+    /**
+     * Called before the instructions of each executable section.
+     */
+    default void section(String name, int addr, int count) {
+    }
+
+    /**
+     * One instruction. {@code word} is the halfword of a 16-bit instruction ({@code length} 2),
+     * which is reported as its RV32I expansion. Register fields are the raw ones of {@link Decoder};
+     * {@link Mnemonic#format(int)} tells which are operands. {@code target} is the address a
+     * jump or branch goes to, -1 for every other instruction (targets are always even).
+     */
+    void instruction(int addr, int word, int length, int mnemonic, int rd, int rs1, int rs2, int imm, int target);
+}
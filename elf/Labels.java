@@ -1,20 +1,181 @@
 package elf;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
+/**
+ * Label name map keyed by code section and address, since in a relocatable object every section
+ * starts at address 0. Addresses outside every section are kept under section -1. Open addressing
+ * over primitive keys, so lookups neither box the address nor chase tree nodes.
+ * <p>
+ * Function names stay in .strtab as offsets and are written from there by
+ * {@link ListingWriter#name}; only L&lt;n&gt; names are strings.
+ */
 public class Labels {
-    private Map<Integer, String> labels = new TreeMap<>();
+    private final CodeMap code;
+    private final ByteBuffer strings;
+    private long[] keys = new long[64];
+    private String[] names = new String[64];
+    // offset of the name in strings plus one, 0 where the name is in names
+    private int[] nameOffsets = new int[64];
+    private int shift = 64 - 6;
+    private int size;
 
-    public void add(int adr, String name) {
-        labels.put(adr, name);
+    public Labels() {
+        this(null, null);
     }
 
-    public boolean checkLabel(int adr) {
-        return labels.containsKey(adr);
+    /**
+     * Labels over the given sections, with symbol names in {@code strings}; with a null {@code code}
+     * every address is taken as outside the sections.
+     */
+    Labels(CodeMap code, ByteBuffer strings) {
+        this.code = code;
+        this.strings = strings;
     }
 
-    public String getLabel(int adr) {
-        return labels.get(adr);
+    private static long key(int section, int adr) {
+        return (long) section << 32 | (adr & 0xffffffffL);
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = (int) ((key * 0x9e3779b97f4a7c15L) >>> shift);
+        while (used(i) && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Section the label of an address seen from {@code near} belongs to, see {@link CodeMap#sectionAt}.
+     */
+    int sectionAt(int near, int adr) {
+        return code == null ? -1 : code.sectionAt(near, adr);
+    }
+
+    private boolean used(int i) {
+        return names[i] != null || nameOffsets[i] != 0;
+    }
+
+    public void add(int section, int adr, String name) {
+        put(section, adr, name, 0);
+    }
+
+    /**
+     * Label whose name is the NUL-terminated string at {@code nameOffset} in the symbol strings.
+     */
+    void addSymbol(int section, int adr, int nameOffset) {
+        put(section, adr, null, nameOffset + 1);
+    }
+
+    private void put(int section, int adr, String name, int nameOffset) {
+        long key = key(section, adr);
+        int i = slot(key);
+        if (!used(i)) {
+            if (2 * (size + 1) > keys.length) {
+                rehash();
+                i = slot(key);
+            }
+            size++;
+        }
+        keys[i] = key;
+        names[i] = name;
+        nameOffsets[i] = nameOffset;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        String[] oldNames = names;
+        int[] oldOffsets = nameOffsets;
+        keys = new long[oldKeys.length * 2];
+        names = new String[oldNames.length * 2];
+        nameOffsets = new int[oldOffsets.length * 2];
+        shift--;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldNames[j] != null || oldOffsets[j] != 0) {
+                int i = slot(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                names[i] = oldNames[j];
+                nameOffsets[i] = oldOffsets[j];
+            }
+        }
+    }
+
+    public boolean checkLabel(int section, int adr) {
+        return used(slot(key(section, adr)));
+    }
+
+    /**
+     * Slot of the label at the address of the section for {@link #write}, or -1 if there is none.
+     */
+    int find(int section, int adr) {
+        int i = slot(key(section, adr));
+        return used(i) ? i : -1;
+    }
+
+    /**
+     * Slot of the label of a jump or branch target seen from an instruction of {@code section}: looked
+     * up in that section if it holds the target, otherwise in the section that does. {@code section}
+     * may be -1.
+     */
+    int findTarget(int section, int adr) {
+        return find(sectionAt(section, adr), adr);
+    }
+
+    /**
+     * Writes the name of the label in the slot.
+     */
+    void write(ListingWriter writer, int slot) throws IOException {
+        if (names[slot] != null) {
+            writer.write(names[slot]);
+        } else {
+            writer.name(strings, nameOffsets[slot] - 1);
+        }
+    }
+
+    /**
+     * Number of slots; slots given out by {@link #find} stay below it until the next label is added.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Offset in {@link #strings()} of the NUL-terminated name of the label in the slot, or -1 if the
+     * name is a string, see {@link #stringName}.
+     */
+    int nameOffset(int slot) {
+        return nameOffsets[slot] - 1;
+    }
+
+    String stringName(int slot) {
+        return names[slot];
+    }
+
+    ByteBuffer strings() {
+        return strings;
+    }
+
+    private String name(int slot) {
+        return slot < 0 ? null : names[slot] != null ? names[slot] : SymbolTable.name(strings, nameOffsets[slot] - 1);
+    }
+
+    /**
+     * Label at the address of the section, or null if there is none; made into a string on each call.
+     */
+    public String getLabel(int section, int adr) {
+        return name(find(section, adr));
+    }
+
+    /**
+     * Label of a jump or branch target, see {@link #findTarget}; made into a string on each call.
+     */
+    public String getTarget(int section, int adr) {
+        return name(findTarget(section, adr));
+    }
+
+    public int size() {
+        return size;
     }
 }
@@ -0,0 +1,61 @@
+package elf;
+
+import java.io.IOException;
+import java.nio.file.*;
+
+/**
+ * On-disk store of rendered listing fragments keyed by a content hash, used to splice
+ * unchanged functions into a new listing without decoding them again.
+ */
+public class ListingCache {
+    private final Path dir;
+
+    private int hits;
+    private int misses;
+
+    public ListingCache(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key + ".lst");
+    }
+
+    /**
+     * Cached fragment, or null if there is none for the key.
+     */
+    public byte[] get(String key) {
+        try {
+            byte[] fragment = Files.readAllBytes(file(key));
+            hits++;
+            return fragment;
+        } catch (IOException e) {
+            misses++;
+            return null;
+        }
+    }
+
+    public void put(String key, byte[] fragment) throws IOException {
+        // write aside and move into place, so that concurrent runs never see a partial fragment
+        Path temp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            Files.write(temp, fragment);
+            Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "listing cache: " + hits + " functions reused, " + misses + " rendered";
+    }
+}
@@ -0,0 +1,367 @@
+package elf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Renders listing lines as UTF-8 bytes into a reusable buffer, without format strings
+ * or temporary strings per line. Full buffers are moved into a large direct buffer that is
+ * written to the output channel. Without an output the buffer just grows and its content
+ * is available through {@link #toString()}.
+ */
+public final class ListingWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CHANNEL_BUFFER_SIZE = 1 << 20;
+    // room for any instruction line that goes into the decode cache, so that it is never split by a flush
+    private static final int MAX_LINE = 96;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] REGISTERS = new byte[32][];
+    private static final byte[][] MNEMONICS = new byte[Mnemonic.COUNT][];
+
+    static {
+        for (int i = 0; i < REGISTERS.length; i++) {
+            REGISTERS[i] = ElfFile.rToString(i).getBytes(StandardCharsets.US_ASCII);
+        }
+        for (int i = 0; i < MNEMONICS.length; i++) {
+            MNEMONICS[i] = Mnemonic.name(i).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final WritableByteChannel out;
+    private final ByteBuffer direct;
+    private byte[] buf;
+    private int pos;
+    private long written;
+    private final byte[] digits = new byte[11];
+    private DecodeCache cache;
+
+    public ListingWriter(WritableByteChannel out) {
+        this.out = out;
+        this.direct = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+        this.buf = new byte[BUFFER_SIZE];
+    }
+
+    public ListingWriter(OutputStream out) {
+        this(Channels.newChannel(out));
+    }
+
+    public ListingWriter() {
+        this.out = null;
+        this.direct = null;
+        this.buf = new byte[128];
+    }
+
+    /**
+     * Reuses rendered text of repeated instruction words through the cache; null turns it off.
+     */
+    public void setCache(DecodeCache cache) {
+        this.cache = cache;
+    }
+
+    public DecodeCache getCache() {
+        return cache;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (pos + n <= buf.length) {
+            return;
+        }
+        drain();
+        if (n > buf.length - pos) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+
+    private void drain() throws IOException {
+        if (out != null && pos > 0) {
+            if (direct.remaining() < pos) {
+                writeDirect();
+            }
+            if (pos > direct.capacity()) {
+                ByteBuffer large = ByteBuffer.wrap(buf, 0, pos);
+                while (large.hasRemaining()) {
+                    out.write(large);
+                }
+            } else {
+                direct.put(buf, 0, pos);
+            }
+            written += pos;
+            pos = 0;
+        }
+    }
+
+    private void writeDirect() throws IOException {
+        direct.flip();
+        while (direct.hasRemaining()) {
+            out.write(direct);
+        }
+        direct.clear();
+    }
+
+    /**
+     * Pushes everything rendered so far to the output channel.
+     */
+    public void flushOutput() throws IOException {
+        if (out != null) {
+            drain();
+            writeDirect();
+        }
+    }
+
+    /**
+     * Number of bytes handed to the output so far.
+     */
+    public long getBytesWritten() {
+        return written + pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            flushOutput();
+            out.close();
+        }
+    }
+
+    public ListingWriter write(char c) throws IOException {
+        ensure(1);
+        buf[pos++] = (byte) c;
+        return this;
+    }
+
+    public ListingWriter write(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+        return this;
+    }
+
+    public ListingWriter write(String s) throws IOException {
+        int length = s.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                pos -= i;
+                return write(s.getBytes(StandardCharsets.UTF_8));
+            }
+            buf[pos++] = (byte) c;
+        }
+        return this;
+    }
+
+    /**
+     * NUL-terminated string from the buffer, each byte taken as a signed char as
+     * {@link SymbolTable.Symbol#getName()} does, written as UTF-8.
+     */
+    public ListingWriter name(ByteBuffer bytes, int offset) throws IOException {
+        int limit = bytes.limit();
+        int end = offset;
+        while (end < limit && bytes.get(end) != 0) {
+            end++;
+        }
+        ensure((end - offset) * 3);
+        for (int i = offset; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b >= 0) {
+                buf[pos++] = b;
+            } else {
+                // (char) b is 0xff80..0xffff, three bytes in UTF-8
+                buf[pos++] = (byte) 0xef;
+                buf[pos++] = (byte) (0xbc | (b & 0xff) >> 6);
+                buf[pos++] = (byte) (0x80 | b & 0x3f);
+            }
+        }
+        return this;
+    }
+
+    public ListingWriter spaces(int n) throws IOException {
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            buf[pos++] = ' ';
+        }
+        return this;
+    }
+
+    private int hexDigits(int v) {
+        return Math.max(1, 8 - Integer.numberOfLeadingZeros(v) / 4);
+    }
+
+    private void putHex(int v, int count) {
+        for (int shift = (count - 1) * 4; shift >= 0; shift -= 4) {
+            buf[pos++] = HEX[(v >>> shift) & 0xf];
+        }
+    }
+
+    /**
+     * Unsigned hex, zero-padded to at least {@code width} digits.
+     */
+    public ListingWriter hex(int v, int width) throws IOException {
+        int count = Math.max(hexDigits(v), width);
+        ensure(count);
+        putHex(v, count);
+        return this;
+    }
+
+    /**
+     * Unsigned hex, padded with spaces on the right to at least {@code width} characters.
+     */
+    public ListingWriter hexLeft(int v, int width) throws IOException {
+        int count = hexDigits(v);
+        ensure(count);
+        putHex(v, count);
+        return spaces(width - count);
+    }
+
+    /**
+     * Decimal, padded with spaces on the left to at least {@code width} characters.
+     */
+    public ListingWriter decimal(int v, int width) throws IOException {
+        int n = digits.length;
+        long x = Math.abs((long) v);
+        do {
+            digits[--n] = (byte) ('0' + x % 10);
+            x /= 10;
+        } while (x != 0);
+        if (v < 0) {
+            digits[--n] = '-';
+        }
+        int count = digits.length - n;
+        spaces(width - count);
+        ensure(count);
+        System.arraycopy(digits, n, buf, pos, count);
+        pos += count;
+        return this;
+    }
+
+    public ListingWriter decimal(int v) throws IOException {
+        return decimal(v, 0);
+    }
+
+    /**
+     * String padded with spaces on the left ({@code width > 0}) or right ({@code width < 0}).
+     */
+    public ListingWriter padded(String s, int width) throws IOException {
+        if (width > 0) {
+            spaces(width - s.length());
+        }
+        write(s);
+        if (width < 0) {
+            spaces(-width - s.length());
+        }
+        return this;
+    }
+
+    public ListingWriter register(int r) throws IOException {
+        return write(REGISTERS[r]);
+    }
+
+    private void target(int target, Labels labels, int section) throws IOException {
+        write("0x").hex(target, 0);
+        int label = labels == null ? -1 : labels.findTarget(section, target);
+        if (label >= 0) {
+            write(" <");
+            labels.write(this, label);
+            write('>');
+        }
+    }
+
+    /**
+     * Label line printed before a labelled instruction.
+     */
+    public void label(int addr, String name) throws IOException {
+        hex(addr, 8).write("   <").write(name).write(">:\n");
+    }
+
+    /**
+     * Label line for the label in the slot, see {@link Labels#find}.
+     */
+    void label(int addr, Labels labels, int slot) throws IOException {
+        hex(addr, 8).write("   <");
+        labels.write(this, slot);
+        write(">:\n");
+    }
+
+    /**
+     * Instruction line; targets are labelled as seen from the code section {@code section} (-1 if not known).
+     */
+    public void instruction(int addr, int word, long decoded, Labels labels, int section) throws IOException {
+        spaces(3).hex(addr, 5).write(":\t");
+        if (cache != null) {
+            byte[] line = cache.line(word, decoded);
+            if (line != null) {
+                write(line);
+                return;
+            }
+            if (!Decoder.hasTarget(decoded)) {
+                ensure(MAX_LINE);
+                int start = pos;
+                instructionText(addr, word, decoded, labels, section);
+                cache.putLine(word, decoded, Arrays.copyOfRange(buf, start, pos));
+                return;
+            }
+        }
+        instructionText(addr, word, decoded, labels, section);
+    }
+
+    private void instructionText(int addr, int word, long decoded, Labels labels, int section) throws IOException {
+        int mnemonic = Decoder.mnemonic(decoded);
+        byte[] name = MNEMONICS[mnemonic];
+        if (Decoder.length(decoded) == 2) {
+            hex(word, 4).spaces(4).write('\t');
+        } else {
+            hex(word, 8).write('\t');
+        }
+        spaces(7 - name.length).write(name);
+        int imm = Decoder.imm(decoded);
+        switch (Mnemonic.format(mnemonic)) {
+            case Mnemonic.FORMAT_U:
+                write('\t').register(Decoder.rd(decoded)).write(", ").decimal(imm);
+                break;
+            case Mnemonic.FORMAT_I:
+                write('\t').register(Decoder.rd(decoded)).write(", ")
+                        .register(Decoder.rs1(decoded)).write(", ").decimal(imm);
+                break;
+            case Mnemonic.FORMAT_R:
+                write('\t').register(Decoder.rd(decoded)).write(", ")
+                        .register(Decoder.rs1(decoded)).write(", ").register(Decoder.rs2(decoded));
+                break;
+            case Mnemonic.FORMAT_LOAD:
+                write('\t').register(Decoder.rd(decoded)).write(", ")
+                        .decimal(imm).write('(').register(Decoder.rs1(decoded)).write(')');
+                break;
+            case Mnemonic.FORMAT_STORE:
+                write('\t').register(Decoder.rs2(decoded)).write(", ")
+                        .decimal(imm).write('(').register(Decoder.rs1(decoded)).write(')');
+                break;
+            case Mnemonic.FORMAT_JUMP:
+                write('\t').register(Decoder.rd(decoded)).write(", ");
+                target(addr + imm, labels, section);
+                break;
+            case Mnemonic.FORMAT_BRANCH:
+                write('\t').register(Decoder.rs1(decoded)).write(", ")
+                        .register(Decoder.rs2(decoded)).write(", ");
+                target(addr + imm, labels, section);
+                break;
+        }
+        write('\n');
+    }
+
+    /**
+     * Bytes rendered into an in-memory writer.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, pos, StandardCharsets.UTF_8);
+    }
+}
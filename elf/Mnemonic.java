@@ -0,0 +1,156 @@
+package elf;
+
+/**
+ * Numeric mnemonic ids produced by {@link Decoder}, with their printed names and operand formats.
+ */
+public final class Mnemonic {
+    public static final int UNKNOWN = 0;
+    public static final int LUI = 1;
+    public static final int AUIPC = 2;
+    public static final int ADDI = 3;
+    public static final int SLTI = 4;
+    public static final int SLTIU = 5;
+    public static final int XORI = 6;
+    public static final int ORI = 7;
+    public static final int ANDI = 8;
+    public static final int SLLI = 9;
+    public static final int SRLI = 10;
+    public static final int SRAI = 11;
+    public static final int ADD = 12;
+    public static final int SUB = 13;
+    public static final int SLL = 14;
+    public static final int SLT = 15;
+    public static final int SLTU = 16;
+    public static final int XOR = 17;
+    public static final int SRL = 18;
+    public static final int SRA = 19;
+    public static final int OR = 20;
+    public static final int AND = 21;
+    public static final int MUL = 22;
+    public static final int MULH = 23;
+    public static final int MULHSU = 24;
+    public static final int MULHU = 25;
+    public static final int DIV = 26;
+    public static final int DIVU = 27;
+    public static final int REM = 28;
+    public static final int REMU = 29;
+    public static final int FENCE = 30;
+    public static final int ECALL = 31;
+    public static final int EBREAK = 32;
+    public static final int URET = 33;
+    public static final int SRET = 34;
+    public static final int MRET = 35;
+    public static final int WFI = 36;
+    public static final int SFENCE_VMA = 37;
+    public static final int LB = 38;
+    public static final int LH = 39;
+    public static final int LW = 40;
+    public static final int LBU = 41;
+    public static final int LHU = 42;
+    public static final int SB = 43;
+    public static final int SH = 44;
+    public static final int SW = 45;
+    public static final int JAL = 46;
+    public static final int JALR = 47;
+    public static final int BEQ = 48;
+    public static final int BNE = 49;
+    public static final int BLT = 50;
+    public static final int BGE = 51;
+    public static final int BLTU = 52;
+    public static final int BGEU = 53;
+
+    public static final int COUNT = 54;
+
+    // no operands
+    public static final int FORMAT_NONE = 0;
+    // rd, imm
+    public static final int FORMAT_U = 1;
+    // rd, rs1, imm
+    public static final int FORMAT_I = 2;
+    // rd, rs1, rs2
+    public static final int FORMAT_R = 3;
+    // rd, imm(rs1) -- loads and jalr
+    public static final int FORMAT_LOAD = 4;
+    // rs2, imm(rs1)
+    public static final int FORMAT_STORE = 5;
+    // rd, target
+    public static final int FORMAT_JUMP = 6;
+    // rs1, rs2, target
+    public static final int FORMAT_BRANCH = 7;
+
+    private static final String[] NAMES = new String[COUNT];
+    private static final int[] FORMATS = new int[COUNT];
+
+    private static void define(int id, String name, int format) {
+        NAMES[id] = name;
+        FORMATS[id] = format;
+    }
+
+    static {
+        define(UNKNOWN, "unknown_instruction", FORMAT_NONE);
+        define(LUI, "lui", FORMAT_U);
+        define(AUIPC, "auipc", FORMAT_U);
+        define(ADDI, "addi", FORMAT_I);
+        define(SLTI, "slti", FORMAT_I);
+        define(SLTIU, "sltiu", FORMAT_I);
+        define(XORI, "xori", FORMAT_I);
+        define(ORI, "ori", FORMAT_I);
+        define(ANDI, "andi", FORMAT_I);
+        define(SLLI, "slli", FORMAT_I);
+        define(SRLI, "srli", FORMAT_I);
+        define(SRAI, "srai", FORMAT_I);
+        define(ADD, "add", FORMAT_R);
+        define(SUB, "sub", FORMAT_R);
+        define(SLL, "sll", FORMAT_R);
+        define(SLT, "slt", FORMAT_R);
+        define(SLTU, "sltu", FORMAT_R);
+        define(XOR, "xor", FORMAT_R);
+        define(SRL, "srl", FORMAT_R);
+        define(SRA, "sra", FORMAT_R);
+        define(OR, "or", FORMAT_R);
+        define(AND, "and", FORMAT_R);
+        define(MUL, "mul", FORMAT_R);
+        define(MULH, "mulh", FORMAT_R);
+        define(MULHSU, "mulhsu", FORMAT_R);
+        define(MULHU, "mulhu", FORMAT_R);
+        define(DIV, "div", FORMAT_R);
+        define(DIVU, "divu", FORMAT_R);
+        define(REM, "rem", FORMAT_R);
+        define(REMU, "remu", FORMAT_R);
+        define(FENCE, "fence", FORMAT_NONE);
+        define(ECALL, "ecall", FORMAT_NONE);
+        define(EBREAK, "ebreak", FORMAT_NONE);
+        define(URET, "uret", FORMAT_NONE);
+        define(SRET, "sret", FORMAT_NONE);
+        define(MRET, "mret", FORMAT_NONE);
+        define(WFI, "wfi", FORMAT_NONE);
+        define(SFENCE_VMA, "sfence.vma", FORMAT_NONE);
+        define(LB, "lb", FORMAT_LOAD);
+        define(LH, "lh", FORMAT_LOAD);
+        define(LW, "lw", FORMAT_LOAD);
+        define(LBU, "lbu", FORMAT_LOAD);
+        define(LHU, "lhu", FORMAT_LOAD);
+        define(SB, "sb", FORMAT_STORE);
+        define(SH, "sh", FORMAT_STORE);
+        define(SW, "sw", FORMAT_STORE);
+        define(JAL, "jal", FORMAT_JUMP);
+        define(JALR, "jalr", FORMAT_LOAD);
+        define(BEQ, "beq", FORMAT_BRANCH);
+        define(BNE, "bne", FORMAT_BRANCH);
+        define(BLT, "blt", FORMAT_BRANCH);
+        define(BGE, "bge", FORMAT_BRANCH);
+        define(BLTU, "bltu", FORMAT_BRANCH);
+        define(BGEU, "bgeu", FORMAT_BRANCH);
+    }
+
+    private Mnemonic() {
+    }
+
+    public static String name(int id) {
+        return NAMES[id];
+    }
+
+    public static int format(int id) {
+        return FORMATS[id];
+    }
+}
@@ -0,0 +1,255 @@
+package elf;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Instruction mix of one file or, after {@link #merge}, of many: a count per mnemonic and per
+ * category, in total and (for one file) per function. Filled as an {@link InstructionVisitor}
+ * straight from {@link ElfFile#decode(InstructionVisitor)}, so counting creates no objects and
+ * renders nothing. Per-function counts are kept by category only, a few ints per function; an
+ * instruction counts for the innermost function of its own code section, see {@link FunctionIndex}.
+ */
+public final class OpcodeHistogram implements InstructionVisitor {
+    public static final int LOADS = 0;
+    public static final int STORES = 1;
+    public static final int BRANCHES = 2;
+    public static final int JUMPS = 3;
+    public static final int MULDIV = 4;
+    public static final int SYSTEM = 5;
+    public static final int UNKNOWN = 6;
+    // 16-bit (RV32C) encodings, whatever they expand to
+    public static final int COMPRESSED = 7;
+    public static final int INSTRUCTIONS = 8;
+    public static final int CATEGORIES = 9;
+
+    private static final String[] CATEGORY_NAMES = {
+            "loads", "stores", "branches", "jumps", "muldiv", "system", "unknown", "compressed", "instructions"
+    };
+    private static final byte[] CATEGORY = new byte[Mnemonic.COUNT];
+
+    static {
+        Arrays.fill(CATEGORY, (byte) -1);
+        for (int id = Mnemonic.LB; id <= Mnemonic.LHU; id++) {
+            CATEGORY[id] = LOADS;
+        }
+        for (int id = Mnemonic.SB; id <= Mnemonic.SW; id++) {
+            CATEGORY[id] = STORES;
+        }
+        for (int id = Mnemonic.BEQ; id <= Mnemonic.BGEU; id++) {
+            CATEGORY[id] = BRANCHES;
+        }
+        CATEGORY[Mnemonic.JAL] = JUMPS;
+        CATEGORY[Mnemonic.JALR] = JUMPS;
+        for (int id = Mnemonic.MUL; id <= Mnemonic.REMU; id++) {
+            CATEGORY[id] = MULDIV;
+        }
+        for (int id = Mnemonic.FENCE; id <= Mnemonic.SFENCE_VMA; id++) {
+            CATEGORY[id] = SYSTEM;
+        }
+        CATEGORY[Mnemonic.UNKNOWN] = UNKNOWN;
+    }
+
+    private final long[] mnemonics = new long[Mnemonic.COUNT];
+    private final long[] categories = new long[CATEGORIES];
+    private int files;
+
+    // sized FUNC symbols by section and address, with CATEGORIES counts each; null after a merge
+    private final FunctionIndex functions;
+    private final int[] functionCounts;
+    // code section being visited, in file order as ElfFile.decode visits them
+    private int section = -1;
+    // function the previous instruction fell into, where the search for the next one starts
+    private int function = -1;
+
+    /**
+     * An empty histogram to merge others into.
+     */
+    public OpcodeHistogram() {
+        this(null);
+    }
+
+    private OpcodeHistogram(FunctionIndex functions) {
+        this.functions = functions;
+        functionCounts = new int[functionCount() * CATEGORIES];
+    }
+
+    /**
+     * Counts every instruction of the file's executable sections.
+     */
+    public static OpcodeHistogram of(ElfFile elf) {
+        elf.parseHeaders();
+        OpcodeHistogram histogram = new OpcodeHistogram(new FunctionIndex(elf.symtab.functions(), elf.codeMap));
+        elf.decode(histogram);
+        histogram.files = 1;
+        return histogram;
+    }
+
+    @Override
+    public void section(String name, int addr, int count) {
+        section++;
+        function = -1;
+    }
+
+    @Override
+    public void instruction(int addr, int word, int length, int mnemonic, int rd, int rs1, int rs2, int imm, int target) {
+        mnemonics[mnemonic]++;
+        int category = CATEGORY[mnemonic];
+        if (category >= 0) {
+            categories[category]++;
+        }
+        if (length == 2) {
+            categories[COMPRESSED]++;
+        }
+        categories[INSTRUCTIONS]++;
+        int f = functionAt(addr);
+        if (f >= 0) {
+            int at = f * CATEGORIES;
+            if (category >= 0) {
+                functionCounts[at + category]++;
+            }
+            if (length == 2) {
+                functionCounts[at + COMPRESSED]++;
+            }
+            functionCounts[at + INSTRUCTIONS]++;
+        }
+    }
+
+    // addresses mostly grow by one instruction, so look at the current and next function before searching
+    private int functionAt(int addr) {
+        if (functions == null) {
+            return -1;
+        }
+        if (function >= 0 && functions.isInnermost(function, section, addr)) {
+            return function;
+        }
+        if (function + 1 < functions.size() && functions.isInnermost(function + 1, section, addr)) {
+            return ++function;
+        }
+        int found = functions.find(section, addr);
+        if (found >= 0) {
+            function = found;
+        }
+        return found;
+    }
+
+    /**
+     * Adds the totals of {@code other} to these; per-function counts are not merged.
+     */
+    public synchronized void merge(OpcodeHistogram other) {
+        for (int i = 0; i < mnemonics.length; i++) {
+            mnemonics[i] += other.mnemonics[i];
+        }
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] += other.categories[i];
+        }
+        files += other.files;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getCount(int mnemonic) {
+        return mnemonics[mnemonic];
+    }
+
+    /**
+     * Count of one of the category constants, e.g. {@link #BRANCHES} or {@link #INSTRUCTIONS}.
+     */
+    public long getCategory(int category) {
+        return categories[category];
+    }
+
+    public int functionCount() {
+        return functions == null ? 0 : functions.size();
+    }
+
+    public String getFunctionName(int function) {
+        return functions.getSymbol(function).getName();
+    }
+
+    public int getFunctionAddr(int function) {
+        return functions.getSymbol(function).getValue();
+    }
+
+    public int getFunctionCategory(int function, int category) {
+        return functionCounts[function * CATEGORIES + category];
+    }
+
+    private static double percent(long count, long total) {
+        return total == 0 ? 0 : count * 100.0 / total;
+    }
+
+    /**
+     * Totals by category and by mnemonic (mnemonics that never occur left out), then the
+     * categories of each function.
+     */
+    public synchronized void print(PrintStream out) {
+        long total = categories[INSTRUCTIONS];
+        out.printf(Locale.ROOT, "%-20s %12d%n", "files", files);
+        out.printf(Locale.ROOT, "%-20s %12s %8s%n", "category", "count", "%");
+        for (int c = 0; c < CATEGORIES; c++) {
+            out.printf(Locale.ROOT, "%-20s %12d %8.2f%n", CATEGORY_NAMES[c], categories[c], percent(categories[c], total));
+        }
+        out.printf(Locale.ROOT, "%-20s %12s %8s%n", "mnemonic", "count", "%");
+        for (int id = 0; id < Mnemonic.COUNT; id++) {
+            if (mnemonics[id] > 0) {
+                out.printf(Locale.ROOT, "%-20s %12d %8.2f%n", Mnemonic.name(id), mnemonics[id], percent(mnemonics[id], total));
+            }
+        }
+        if (functionCount() > 0) {
+            out.printf(Locale.ROOT, "%-20s", "function");
+            for (String name : CATEGORY_NAMES) {
+                out.printf(Locale.ROOT, " %12s", name);
+            }
+            out.println();
+            for (int f = 0; f < functionCount(); f++) {
+                out.printf(Locale.ROOT, "%-20s", getFunctionName(f));
+                for (int c = 0; c < CATEGORIES; c++) {
+                    out.printf(Locale.ROOT, " %12d", functionCounts[f * CATEGORIES + c]);
+                }
+                out.println();
+            }
+        }
+    }
+
+    /**
+     * The same figures as {@link #print(PrintStream)} as one JSON object.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"files\":").append(files).append(",\"categories\":");
+        for (int c = 0; c < CATEGORIES; c++) {
+            category(json, c, categories[c]);
+        }
+        json.append('}');
+        json.append(",\"mnemonics\":{");
+        String separator = "";
+        for (int id = 0; id < Mnemonic.COUNT; id++) {
+            if (mnemonics[id] > 0) {
+                json.append(separator);
+                RunStats.string(json, Mnemonic.name(id));
+                json.append(':').append(mnemonics[id]);
+                separator = ",";
+            }
+        }
+        json.append("},\"functions\":[");
+        for (int f = 0; f < functionCount(); f++) {
+            json.append(f == 0 ? "" : ",").append("{\"name\":");
+            RunStats.string(json, getFunctionName(f));
+            json.append(",\"addr\":").append(getFunctionAddr(f) & 0xffffffffL).append(",\"categories\":");
+            for (int c = 0; c < CATEGORIES; c++) {
+                category(json, c, functionCounts[f * CATEGORIES + c]);
+            }
+            json.append("}}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void category(StringBuilder json, int category, long count) {
+        json.append(category == 0 ? "{" : ",");
+        RunStats.string(json, CATEGORY_NAMES[category]);
+        json.append(':').append(count);
+    }
+}
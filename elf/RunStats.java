@@ -0,0 +1,149 @@
+package elf;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-phase metrics of one run: wall time, bytes allocated, instructions and input bytes
+ * processed for each phase, plus named counters (labels, cache hits, output bytes, ...).
+ * Phases with the same name are summed and reported in the order they first ran. Allocation
+ * is measured on the thread that runs the phase, so work a phase hands to other threads
+ * (parallel decoding, the streaming decoder) counts only in wall time.
+ */
+public final class RunStats {
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final Map<String, Totals> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final long created = System.nanoTime();
+
+    private static final class Totals {
+        long nanos;
+        long allocated;
+        long instructions;
+        long bytes;
+    }
+
+    /**
+     * A phase in progress, see {@link #begin(String)}.
+     */
+    public final class Phase {
+        private final String name;
+        private final long start;
+        private final long allocated;
+
+        private Phase(String name) {
+            this.name = name;
+            this.allocated = allocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Ends the phase and adds it to the totals of its name.
+         */
+        public void end(long instructions, long bytes) {
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedBytes() - this.allocated;
+            synchronized (RunStats.this) {
+                Totals totals = phases.computeIfAbsent(name, k -> new Totals());
+                totals.nanos += nanos;
+                totals.allocated += allocated;
+                totals.instructions += instructions;
+                totals.bytes += bytes;
+            }
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public Phase begin(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Sets a named counter, replacing an earlier value.
+     */
+    public synchronized void count(String name, long value) {
+        counters.put(name, value);
+    }
+
+    public synchronized long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    public synchronized void print(PrintStream out) {
+        long total = System.nanoTime() - created;
+        out.printf(Locale.ROOT, "%-20s %10s %12s %12s %12s %12s%n",
+                "phase", "ms", "instrs", "Minstr/s", "MB/s", "alloc MB");
+        for (Map.Entry<String, Totals> entry : phases.entrySet()) {
+            Totals t = entry.getValue();
+            double seconds = Math.max(t.nanos, 1) / 1e9;
+            out.printf(Locale.ROOT, "%-20s %10.2f %12d %12.2f %12.2f %12.2f%n", entry.getKey(), t.nanos / 1e6,
+                    t.instructions, t.instructions / seconds / 1e6, t.bytes / seconds / 1e6, t.allocated / 1e6);
+        }
+        out.printf(Locale.ROOT, "%-20s %10.2f%n", "total", total / 1e6);
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            out.printf(Locale.ROOT, "%-20s %10d%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * The same figures as {@link #print(PrintStream)} as one JSON object; times are in nanoseconds.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"totalNanos\":").append(System.nanoTime() - created);
+        json.append(",\"phases\":[");
+        String separator = "";
+        for (Map.Entry<String, Totals> entry : phases.entrySet()) {
+            Totals t = entry.getValue();
+            json.append(separator).append("{\"name\":");
+            string(json, entry.getKey());
+            json.append(",\"nanos\":").append(t.nanos)
+                    .append(",\"allocatedBytes\":").append(t.allocated)
+                    .append(",\"instructions\":").append(t.instructions)
+                    .append(",\"bytes\":").append(t.bytes).append('}');
+            separator = ",";
+        }
+        json.append("],\"counters\":{");
+        separator = "";
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            json.append(separator);
+            string(json, entry.getKey());
+            json.append(':').append(entry.getValue());
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    static void string(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
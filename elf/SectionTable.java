@@ -0,0 +1,117 @@
+package elf;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The section header table, read once into primitive arrays with hash lookups by name and type.
+ */
+public final class SectionTable {
+    private static final int ENTRY_SIZE = 0x28;
+
+    private final String[] names;
+    private final int[] types;
+    private final int[] flags;
+    private final int[] addrs;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final int[] links;
+    private final Map<String, Integer> byName = new HashMap<>();
+    private final Map<Integer, Integer> byType = new HashMap<>();
+
+    /**
+     * Reads up to {@code count} headers from {@code shoff}, stopping at the end of the file.
+     * Names are resolved through the section {@code namesIndex} if it is a string table.
+     */
+    SectionTable(ByteBuffer bytes, int bytesRead, int shoff, int count, int namesIndex) {
+        int n = 0;
+        while (n < count && (long) shoff + (long) n * ENTRY_SIZE + 0x24 < bytesRead) {
+            n++;
+        }
+        names = new String[n];
+        types = new int[n];
+        flags = new int[n];
+        addrs = new int[n];
+        offsets = new int[n];
+        sizes = new int[n];
+        links = new int[n];
+        int[] nameOffsets = new int[n];
+        for (int i = 0; i < n; i++) {
+            int at = shoff + i * ENTRY_SIZE;
+            nameOffsets[i] = bytes.getInt(at);
+            types[i] = bytes.getInt(at + 0x04);
+            flags[i] = bytes.getInt(at + 0x08);
+            addrs[i] = bytes.getInt(at + 0x0c);
+            offsets[i] = bytes.getInt(at + 0x10);
+            sizes[i] = bytes.getInt(at + 0x14);
+            links[i] = bytes.getInt(at + 0x18);
+            byType.putIfAbsent(types[i], i);
+        }
+        boolean named = namesIndex >= 0 && namesIndex < n && types[namesIndex] == ElfFile.SHT_STRTAB;
+        for (int i = 0; i < n; i++) {
+            names[i] = named ? readName(bytes, bytesRead, offsets[namesIndex] + nameOffsets[i]) : "";
+            byName.putIfAbsent(names[i], i);
+        }
+    }
+
+    private static String readName(ByteBuffer bytes, int bytesRead, int start) {
+        StringBuilder str = new StringBuilder();
+        for (int i = start; i >= 0 && i < bytesRead && bytes.get(i) != 0; i++) {
+            str.append((char) bytes.get(i));
+        }
+        return str.toString();
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Index of the first section with this name, or -1.
+     */
+    public int find(String name) {
+        Integer index = byName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Index of the first section of this type, or -1.
+     */
+    public int findByType(int type) {
+        Integer index = byType.get(type);
+        return index == null ? -1 : index;
+    }
+
+    public boolean isExecutable(int index) {
+        return (flags[index] & ElfFile.SHF_EXECINSTR) != 0 && types[index] != ElfFile.SHT_NOBITS;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public int getType(int index) {
+        return types[index];
+    }
+
+    public int getFlags(int index) {
+        return flags[index];
+    }
+
+    public int getAddr(int index) {
+        return addrs[index];
+    }
+
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    public int getSize(int index) {
+        return sizes[index];
+    }
+
+    public int getLink(int index) {
+        return links[index];
+    }
+}
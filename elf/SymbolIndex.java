@@ -0,0 +1,142 @@
+package elf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable index from an address to the symbol containing it, built once from .symtab.
+ * Symbols are kept in primitive arrays sorted by start address, with a max tree over their end
+ * addresses, so a lookup is a binary search for the last symbol starting at or below the address
+ * and a descent for the last of those that ends after it: O(log n) however symbols nest.
+ * Overlapping symbols resolve to the innermost one
+ * (the latest start, then the smallest size); a zero-size symbol matches only its own address
+ * and only when no sized symbol contains it.
+ */
+public final class SymbolIndex {
+    private final long[] starts;
+    private final long[] ends;
+    // implicit binary tree over ends: node k covers its children 2k and 2k + 1, leaves start at leaves
+    private final long[] maxEnds;
+    private final int leaves;
+    private final SymbolTable.Symbol[] symbols;
+
+    SymbolIndex(List<SymbolTable.Symbol> symtab) {
+        List<SymbolTable.Symbol> indexed = new ArrayList<>();
+        for (SymbolTable.Symbol symbol : symtab) {
+            int type = symbol.getType();
+            if (type != SymbolTable.STT_SECTION && type != SymbolTable.STT_FILE && symbol.getIndex() != SymbolTable.SHN_UNDEF) {
+                indexed.add(symbol);
+            }
+        }
+        indexed.sort((a, b) -> a.getValue() != b.getValue()
+                ? Integer.compareUnsigned(a.getValue(), b.getValue())
+                : Integer.compareUnsigned(b.getSize(), a.getSize()));
+        int n = indexed.size();
+        starts = new long[n];
+        ends = new long[n];
+        symbols = indexed.toArray(new SymbolTable.Symbol[0]);
+        for (int i = 0; i < n; i++) {
+            starts[i] = symbols[i].getValue() & 0xffffffffL;
+            ends[i] = starts[i] + (symbols[i].getSize() & 0xffffffffL);
+        }
+        leaves = Integer.highestOneBit(Math.max(n, 1) * 2 - 1);
+        maxEnds = new long[2 * leaves];
+        Arrays.fill(maxEnds, Long.MIN_VALUE);
+        System.arraycopy(ends, 0, maxEnds, leaves, n);
+        for (int k = leaves - 1; k > 0; k--) {
+            maxEnds[k] = Math.max(maxEnds[2 * k], maxEnds[2 * k + 1]);
+        }
+    }
+
+    /**
+     * Position of the symbol containing the address, or -1; see {@link #getSymbol(int)}.
+     */
+    public int find(int addr) {
+        long a = addr & 0xffffffffL;
+        int lo = 0;
+        int hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= a) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int inner = lastEndingAfter(1, 0, leaves, lo, a);
+        if (inner >= 0) {
+            return inner;
+        }
+        // zero-size symbols at the address sort last among those starting there; take the first of them
+        int exact = -1;
+        for (int l = lowerBound(a), h = lo; l < h; ) {
+            int mid = (l + h) >>> 1;
+            if (ends[mid] == a) {
+                exact = mid;
+                h = mid;
+            } else {
+                l = mid + 1;
+            }
+        }
+        return exact;
+    }
+
+    /**
+     * Greatest position below {@code limit} in the node's leaves {@code [from, to)} whose symbol ends
+     * after the address, or -1; a node with no such leaf is skipped by its maximum.
+     */
+    private int lastEndingAfter(int node, int from, int to, int limit, long a) {
+        if (from >= limit || maxEnds[node] <= a) {
+            return -1;
+        }
+        if (to - from == 1) {
+            return from;
+        }
+        int mid = (from + to) >>> 1;
+        int right = lastEndingAfter(2 * node + 1, mid, to, limit, a);
+        return right >= 0 ? right : lastEndingAfter(2 * node, from, mid, limit, a);
+    }
+
+    private int lowerBound(long a) {
+        int lo = 0;
+        int hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < a) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public SymbolTable.Symbol getSymbol(int position) {
+        return symbols[position];
+    }
+
+    /**
+     * Offset of the address from the start of the symbol at the given position.
+     */
+    public int offset(int position, int addr) {
+        return (int) ((addr & 0xffffffffL) - starts[position]);
+    }
+
+    /**
+     * {@code name+0xoffset} (or just {@code name} at offset 0) of the symbol containing the address, or null.
+     */
+    public String symbolize(int addr) {
+        int position = find(addr);
+        if (position < 0) {
+            return null;
+        }
+        int offset = offset(position, addr);
+        String name = symbols[position].getName();
+        return offset == 0 ? name : name + "+0x" + Integer.toHexString(offset);
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+}
@@ -1,6 +1,5 @@
 package elf;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.*;
 import java.util.*;
@@ -46,7 +45,11 @@ public class SymbolTable {
     public static final int STT_LOPROC = 13;
     public static final int STT_HIPROC = 15;
 
-    static class Symbol extends SymbolTable {
+    /**
+     * A .symtab entry. The name stays in .strtab as an offset into the file buffer: it is written
+     * and compared straight from the bytes and only turned into a String by {@link #getName()}.
+     */
+    static class Symbol {
         private int symbol;
         private int value;
         private int size;
@@ -54,9 +57,12 @@ public class SymbolTable {
         private int bind;
         private int vis;
         private short index;
+        private final ByteBuffer strings;
+        private final int nameOffset;
         private String name;
 
-        public Symbol(int symbol, int value, int size, int type, int bind, int vis, short index, String name) {
+        public Symbol(int symbol, int value, int size, int type, int bind, int vis, short index,
+                      ByteBuffer strings, int nameOffset) {
             this.symbol = symbol;
             this.value = value;
             this.size = size;
@@ -64,7 +70,57 @@ public class SymbolTable {
             this.bind = bind;
             this.vis = vis;
             this.index = index;
-            this.name = name;
+            this.strings = strings;
+            this.nameOffset = nameOffset;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public int getBind() {
+            return bind;
+        }
+
+        public int getVis() {
+            return vis;
+        }
+
+        public short getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            if (name == null) {
+                name = SymbolTable.name(strings, nameOffset);
+            }
+            return name;
+        }
+
+        /**
+         * Compares the name in .strtab with the string without decoding it.
+         */
+        public boolean nameEquals(String other) {
+            if (name != null) {
+                return name.equals(other);
+            }
+            int length = other.length();
+            int limit = strings.limit();
+            for (int k = 0; k < length; k++) {
+                int i = nameOffset + k;
+                if (i >= limit || strings.get(i) == 0 || (char) strings.get(i) != other.charAt(k)) {
+                    return false;
+                }
+            }
+            return nameOffset + length >= limit || strings.get(nameOffset + length) == 0;
         }
 
         public String typeToString() {
@@ -161,34 +217,125 @@ public class SymbolTable {
             }
         }
 
+        private boolean isSpecialIndex() {
+            switch (this.index) {
+                case SHN_UNDEF, SHN_LOPROC, SHN_HIPROC, SHN_ABS, SHN_COMMON, SHN_XINDEX, SHN_LOOS, SHN_HIOS:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        void writeLine(ListingWriter writer) throws IOException {
+            writer.write('[').decimal(symbol, 4).write("] 0x").hexLeft(value, 15).write(' ')
+                    .decimal(size, 5).write(' ')
+                    .padded(typeToString(), -8).write(' ')
+                    .padded(bindToString(), -8).write(' ')
+                    .padded(visToString(), -8).write(' ');
+            if (isSpecialIndex()) {
+                writer.padded(indexToString(), 6);
+            } else {
+                writer.decimal((int) index & (0xffff), 6);
+            }
+            writer.write(' ').name(strings, nameOffset).write('\n');
+        }
+
         public String toString() {
-            return String.format("[%4d] 0x%-15x %5d %-8s %-8s %-8s %6s %s\n", symbol, value, size,
-                    typeToString(), bindToString(), visToString(), indexToString(), name);
+            ListingWriter writer = new ListingWriter();
+            try {
+                writeLine(writer);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return writer.toString();
         }
 
     }
 
+    /**
+     * NUL-terminated string at the offset, each byte taken as a char.
+     */
+    static String name(ByteBuffer strings, int offset) {
+        StringBuilder str = new StringBuilder();
+        for (int i = offset; i < strings.limit() && strings.get(i) != 0; i++) {
+            str.append((char) strings.get(i));
+        }
+        return str.toString();
+    }
+
     private List<Symbol> symtab = new ArrayList<Symbol>();
 
     public void add(Symbol e) {
         symtab.add(e);
     }
 
-    public void write(BufferedWriter writer) throws IOException {
+    private static final String HEADER =
+            "Symbol Value              Size Type     Bind     Vis       Index Name\n";
+
+    public void write(ListingWriter writer) throws IOException {
         writer.write("\n.symtab\n");
-        writer.write(String.format("%s %-15s %7s %-8s %-8s %-8s %6s %s\n",
-                "Symbol", "Value", "Size", "Type",
-                "Bind", "Vis", "Index", "Name"));
+        writer.write(HEADER);
         for (Symbol i : symtab) {
-            writer.write(i.toString());
+            i.writeLine(writer);
+        }
+    }
+
+    /**
+     * Symbol with the given name, preferring a FUNC symbol; null if there is none.
+     */
+    public Symbol find(String name) {
+        Symbol found = null;
+        for (Symbol symbol : symtab) {
+            if (symbol.nameEquals(name)) {
+                if (symbol.type == STT_FUNC) {
+                    return symbol;
+                }
+                if (found == null) {
+                    found = symbol;
+                }
+            }
         }
+        return found;
+    }
+
+    public int size() {
+        return symtab.size();
+    }
+
+    /**
+     * All symbols in .symtab order.
+     */
+    public List<Symbol> symbols() {
+        return Collections.unmodifiableList(symtab);
+    }
+
+    /**
+     * FUNC symbols ordered by address, compared unsigned.
+     */
+    public List<Symbol> functions() {
+        List<Symbol> functions = new ArrayList<>();
+        for (Symbol symbol : symtab) {
+            if (symbol.type == STT_FUNC) {
+                functions.add(symbol);
+            }
+        }
+        functions.sort((a, b) -> Integer.compareUnsigned(a.value, b.value));
+        return functions;
+    }
+
+    public SymbolIndex toIndex() {
+        return new SymbolIndex(symtab);
     }
 
-    public Labels toLabels() {
-        Labels labels = new Labels();
+    /**
+     * Labels of the FUNC symbols, each under the code section its {@code st_shndx} names, see
+     * {@link CodeMap#sectionOf(short, int)}. Names are left in .strtab.
+     */
+    Labels toLabels(CodeMap code) {
+        Labels labels = new Labels(code, symtab.isEmpty() ? null : symtab.get(0).strings);
         for (Symbol symbol : symtab) {
             if (symbol.type == STT_FUNC) {
-                labels.add(symbol.value, symbol.name);
+                labels.addSymbol(code.sectionOf(symbol.index, symbol.value), symbol.value, symbol.nameOffset);
             }
         }
         return labels;
@@ -0,0 +1,89 @@
+package elf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the three phases of a run: parsing a whole image, decoding its code words and
+ * writing the listing of a parsed image. Inputs are the bundled test_elf (or any file given with
+ * {@code -p input=path}) and synthetic RV32IM images named {@code synthetic-<words>}, see
+ * {@link SyntheticElf}. {@link Benchmarks} remains as a quick check without JMH.
+ * <p>
+ * Usage, from the top of the tree: {@code java -jar jmh/target/benchmarks.jar [jmh options]}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElfBenchmarks {
+    private static final String SYNTHETIC = "synthetic-";
+
+    /**
+     * The input image, with its headers read for {@link #decode} and fully parsed for {@link #write}.
+     */
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({"test_elf", "synthetic-65536", "synthetic-1048576"})
+        public String input;
+
+        ByteBuffer image;
+        ElfFile headers;
+        ElfFile parsed;
+
+        @Setup(Level.Trial)
+        public void load() throws IOException {
+            if (input.startsWith(SYNTHETIC)) {
+                int words = Integer.parseInt(input.substring(SYNTHETIC.length()));
+                image = SyntheticElf.build(words, 32, words);
+            } else {
+                image = ByteBuffer.wrap(Files.readAllBytes(Paths.get(input)));
+            }
+            headers = Benchmarks.headers(image);
+            parsed = Benchmarks.parsed(image);
+        }
+    }
+
+    @Benchmark
+    public void parse(Input in, Blackhole bh) {
+        ElfFile elf = new ElfFile(in.image);
+        elf.parse();
+        bh.consume(elf);
+    }
+
+    @Benchmark
+    public void decode(Input in, Blackhole bh) {
+        ElfFile elf = in.headers;
+        for (CodeSection section : elf.code) {
+            for (int index = 0; index < section.count; index++) {
+                bh.consume(Decoder.decode(elf.word(section, index), section.compressed));
+            }
+        }
+    }
+
+    @Benchmark
+    public void write(Input in, Blackhole bh) throws IOException {
+        ListingWriter writer = new ListingWriter(Benchmarks.DISCARD);
+        in.parsed.writeText(writer);
+        in.parsed.symtab.write(writer);
+        writer.flushOutput();
+        bh.consume(writer.getBytesWritten());
+    }
+}